@@ -0,0 +1,126 @@
+package com.faziz.playarea.benchmarks;
+
+import com.faziz.playarea.MatchListener;
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.PlayArea;
+import com.faziz.playarea.Player;
+import com.faziz.playarea.PlayerRuntime;
+import com.faziz.playarea.Referee;
+import com.faziz.playarea.channel.BlockingQueueChannel;
+import com.faziz.playarea.channel.RingBufferChannel;
+import com.faziz.playarea.channel.WaitStrategy;
+import com.faziz.playarea.grid.GridMode;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Moves per second through <code>PlayArea.requestMove</code> and the
+ * coordinator loop, end to end.
+ *
+ * The benchmark thread requests the moves for all players round robin, so once
+ * the request channel is full it runs at the pace of the coordinator. Evicted
+ * players are replaced by new ones to keep the number of players constant.
+ * Each trial runs in a JVM of its own, as the play area is a singleton.
+ *
+ * @author faziz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveThroughputBenchmark {
+
+    private static final int CHANNEL_CAPACITY = 1024;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    @Param({"16", "1000"})
+    public int players;
+
+    /** queue or ring for the coordinator thread, direct for no coordinator. */
+    @Param({"queue", "ring", "direct"})
+    public String coordinator;
+
+    private PlayArea playArea;
+    private Referee referee;
+    private Player[] slots;
+    private MovementDirection[] directions = new MovementDirection[PlayAreaState.SAMPLES];
+    private int nextSlot = 0;
+    private int nextDirection = 0;
+    private int replaced = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Logger.getLogger("").setLevel(java.util.logging.Level.OFF);
+
+        boolean direct = "direct".equals(coordinator);
+        playArea = PlayArea.getInstance(size, size,
+            direct ? GridMode.CONCURRENT : GridMode.DENSE);
+        referee = Referee.getInstance(playArea);
+        playArea.setReferee(referee);
+        playArea.setPlayerRuntime(PlayerRuntime.EXTERNAL);
+        playArea.setMatchListener(new MatchListener() {
+            public void matchFinished(PlayArea playArea, Player winner) {
+            }
+        });
+        if ("ring".equals(coordinator)) {
+            playArea.setChannel(new RingBufferChannel(CHANNEL_CAPACITY, WaitStrategy.PARK));
+        } else {
+            playArea.setChannel(new BlockingQueueChannel(CHANNEL_CAPACITY, true));
+        }
+        playArea.setDirectMoves(direct);
+
+        slots = new Player[players];
+        for (int i = 0; i < players; i++) {
+            slots[i] = newPlayer();
+        }
+        Random random = new Random(42);
+        MovementDirection[] values = MovementDirection.values();
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = values[random.nextInt(values.length)];
+        }
+
+        if (!direct) {
+            // Not activate(), a daemon coordinator lets the forked JVM exit.
+            Thread thread = new Thread(playArea, "coordinator");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private Player newPlayer() {
+        Player player = new Player(playArea, referee, "Jhon" + replaced++);
+        playArea.registerPlayer(player);
+        return player;
+    }
+
+    @Benchmark
+    public void requestMove() {
+        int slot = nextSlot;
+        nextSlot = (slot + 1 == slots.length) ? 0 : slot + 1;
+        Player player = slots[slot];
+        if (!playArea.isRegistered(player)) {
+            // Keeps the evicted player from coming back on its own.
+            player.cleanup();
+            player = newPlayer();
+            slots[slot] = player;
+        }
+        playArea.requestMove(player, directions[nextDirection++ & (PlayAreaState.SAMPLES - 1)]);
+    }
+}
@@ -0,0 +1,48 @@
+package com.faziz.playarea.benchmarks;
+
+import com.faziz.playarea.Cell;
+import com.faziz.playarea.MovementDirection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the cell lookups and of a player picking its next direction.
+ *
+ * @author faziz
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayAreaBenchmark {
+
+    private int next = 0;
+
+    @Benchmark
+    public Cell getCell(PlayAreaState state) {
+        int i = next++ & (PlayAreaState.SAMPLES - 1);
+        return state.playArea.getCell(state.sampleRows[i], state.sampleColumns[i]);
+    }
+
+    @Benchmark
+    public Cell getCellInDirection(PlayAreaState state) {
+        int i = next++ & (PlayAreaState.SAMPLES - 1);
+        return state.sampleCells[i].getCellInDirection(state.sampleDirections[i]);
+    }
+
+    @Benchmark
+    public MovementDirection getMovementDirection(PlayAreaState state) {
+        int i = next++ & (PlayAreaState.SAMPLES - 1);
+        return state.samplePlayers[i].getMovementDirection();
+    }
+}
@@ -0,0 +1,87 @@
+package com.faziz.playarea.benchmarks;
+
+import com.faziz.playarea.Cell;
+import com.faziz.playarea.MatchListener;
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.PlayArea;
+import com.faziz.playarea.Player;
+import com.faziz.playarea.PlayerRuntime;
+import com.faziz.playarea.Referee;
+import com.faziz.playarea.grid.GridMode;
+import java.util.Random;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A play area of <code>size</code> by <code>size</code> cells with players
+ * registered at random, plus a fixed sequence of players, directions and cells
+ * for the benchmarks to cycle through.
+ *
+ * The play area is a singleton, so every trial needs a JVM of its own: the
+ * benchmarks must not be run with <code>-f 0</code>.
+ *
+ * @author faziz
+ */
+@State(Scope.Benchmark)
+public class PlayAreaState {
+
+    /** Length of the sample sequences, a power of two. */
+    static final int SAMPLES = 4096;
+    /** Seed of the sample sequences, the same for every run. */
+    private static final long SEED = 42;
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    /** Capped at half of the cells, so registration always finds a free one. */
+    @Param({"100", "10000"})
+    public int players;
+
+    @Param({"DENSE", "SPARSE"})
+    public GridMode gridMode;
+
+    PlayArea playArea;
+    Referee referee;
+    Player[] registered;
+    Player[] samplePlayers = new Player[SAMPLES];
+    MovementDirection[] sampleDirections = new MovementDirection[SAMPLES];
+    Cell[] sampleCells = new Cell[SAMPLES];
+    int[] sampleRows = new int[SAMPLES];
+    int[] sampleColumns = new int[SAMPLES];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Logger.getLogger("").setLevel(java.util.logging.Level.OFF);
+
+        playArea = PlayArea.getInstance(size, size, gridMode);
+        playArea.setRandom(new Random(SEED));
+        referee = Referee.getInstance(playArea);
+        playArea.setReferee(referee);
+        playArea.setPlayerRuntime(PlayerRuntime.EXTERNAL);
+        playArea.setMatchListener(new MatchListener() {
+            public void matchFinished(PlayArea playArea, Player winner) {
+            }
+        });
+
+        int count = (int) Math.min(players, (long) size * size / 2);
+        registered = new Player[count];
+        for (int i = 0; i < count; i++) {
+            registered[i] = new Player(playArea, referee, "Jhon" + i);
+            playArea.registerPlayer(registered[i]);
+        }
+
+        Random random = new Random(SEED);
+        for (int i = 0; i < SAMPLES; i++) {
+            samplePlayers[i] = registered[random.nextInt(count)];
+            // As the players pick them, never off the board.
+            sampleDirections[i] = samplePlayers[i].getMovementDirection();
+            sampleRows[i] = random.nextInt(size);
+            sampleColumns[i] = random.nextInt(size);
+            sampleCells[i] = playArea.getCell(sampleRows[i], sampleColumns[i]);
+        }
+    }
+}
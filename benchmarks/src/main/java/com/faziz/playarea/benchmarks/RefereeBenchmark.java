@@ -0,0 +1,40 @@
+package com.faziz.playarea.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the referee's checks, run by the coordinator for every move request.
+ *
+ * @author faziz
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RefereeBenchmark {
+
+    private int next = 0;
+
+    @Benchmark
+    public boolean moveIsAllowed(PlayAreaState state) {
+        int i = next++ & (PlayAreaState.SAMPLES - 1);
+        return state.referee.moveIsAllowed(state.samplePlayers[i], state.sampleDirections[i]);
+    }
+
+    @Benchmark
+    public boolean moveIsFouled(PlayAreaState state) {
+        int i = next++ & (PlayAreaState.SAMPLES - 1);
+        return state.referee.moveIsFouled(state.samplePlayers[i], state.sampleDirections[i]);
+    }
+}
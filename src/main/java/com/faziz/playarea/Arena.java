@@ -0,0 +1,75 @@
+package com.faziz.playarea;
+
+/**
+ * One match hosted by an <code>ArenaManager</code>: a play area with its own
+ * referee, sharing the manager's coordinator and scheduler threads.
+ *
+ * Players are made and registered on the play area as usual, then the match
+ * is started with <code>start</code>.
+ *
+ * @author faziz
+ */
+public class Arena {
+
+    private final String name;
+    private final PlayArea playArea;
+    private final Referee referee;
+    private final ArenaManager manager;
+    private volatile Player winner = null;
+
+    Arena(String name, PlayArea playArea, Referee referee, ArenaManager manager) {
+        this.name = name;
+        this.playArea = playArea;
+        this.referee = referee;
+        this.manager = manager;
+    }
+
+    /**
+     * Activates the play area and sets the registered players going.
+     */
+    public void start() {
+        playArea.activate();
+        playArea.go();
+    }
+
+    /**
+     * Ends the match now, if not over yet, and removes the arena from the
+     * manager. The other arenas go on.
+     */
+    public void close() {
+        manager.close(this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public PlayArea getPlayArea() {
+        return playArea;
+    }
+
+    public Referee getReferee() {
+        return referee;
+    }
+
+    /**
+     * @return last player in the play once the match is over, null until then
+     * or if nobody was left.
+     */
+    public Player getWinner() {
+        return winner;
+    }
+
+    void setWinner(Player winner) {
+        this.winner = winner;
+    }
+
+    public boolean isFinished() {
+        return playArea.isFinished();
+    }
+
+    @Override
+    public String toString() {
+        return "Arena{ name=" + name + '}';
+    }
+}
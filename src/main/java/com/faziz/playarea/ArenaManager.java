@@ -0,0 +1,164 @@
+package com.faziz.playarea;
+
+import com.faziz.playarea.channel.BlockingQueueChannel;
+import com.faziz.playarea.grid.GridMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many independent matches in one process.
+ *
+ * Each <code>Arena</code> has a play area and referee of its own, but no
+ * threads of its own: the requests of all the arenas are handled on one fixed
+ * pool of coordinator threads, and the players of all the arenas are driven by
+ * one shared <code>TimingWheelScheduler</code>. An arena costs the memory of
+ * its grid and players, so thousands fit in a process.
+ *
+ * A match over, or closed, only stops its own players and is removed from the
+ * manager, the process and the other arenas go on.
+ *
+ * @author faziz
+ */
+public class ArenaManager {
+
+    private static final Logger logger = Logger.getLogger(ArenaManager.class.getName());
+    /** Requests each arena can have waiting, so a player is seldom held up. */
+    private static final int CHANNEL_CAPACITY = 1024;
+
+    private final ExecutorService coordinators;
+    private final TimingWheelScheduler scheduler;
+    private final ConcurrentMap<String, Arena> arenas = new ConcurrentHashMap<String, Arena>();
+    private final AtomicLong finishedCount = new AtomicLong();
+    private final AtomicLong closedCount = new AtomicLong();
+    /** Told when the match of any arena is over. */
+    private volatile MatchListener matchListener = null;
+
+    /**
+     * @param coordinatorThreads threads handling the requests of all arenas.
+     * @param schedulerThreads threads driving the players of all arenas.
+     */
+    public ArenaManager(int coordinatorThreads, int schedulerThreads) {
+        final AtomicInteger count = new AtomicInteger();
+        coordinators = Executors.newFixedThreadPool(coordinatorThreads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "arena-coordinator-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler = new TimingWheelScheduler(schedulerThreads);
+        logger.log(Level.INFO, "Arena manager with {0} coordinator thread(s).", 
+            coordinatorThreads);
+    }
+
+    /**
+     * Creates an arena with an empty play area.
+     * @param name unique among the running arenas.
+     * @param rows
+     * @param columns
+     * @param gridMode
+     * @return the arena.
+     */
+    public Arena createArena(String name, int rows, int columns, GridMode gridMode) {
+        PlayArea playArea = new PlayArea(rows, columns, gridMode);
+        playArea.setSharedScheduler(scheduler);
+        playArea.setCoordinatorPool(coordinators);
+        playArea.setChannel(new BlockingQueueChannel(CHANNEL_CAPACITY, false));
+        Referee referee = new Referee(playArea);
+        playArea.setReferee(referee);
+        final Arena arena = new Arena(name, playArea, referee, this);
+        playArea.setMatchListener(new MatchListener() {
+            public void matchFinished(PlayArea playArea, Player winner) {
+                arena.setWinner(winner);
+                if (arenas.remove(arena.getName(), arena)) {
+                    finishedCount.incrementAndGet();
+                }
+                MatchListener listener = matchListener;
+                if (listener != null) {
+                    listener.matchFinished(playArea, winner);
+                }
+            }
+        });
+        if (arenas.putIfAbsent(name, arena) != null) {
+            throw new IllegalArgumentException("Arena " + name + " exists already.");
+        }
+        return arena;
+    }
+
+    /**
+     * Ends the match of the arena now, if not over yet.
+     * @param arena
+     */
+    void close(Arena arena) {
+        if (arenas.remove(arena.getName(), arena)) {
+            closedCount.incrementAndGet();
+        }
+        arena.getPlayArea().finishMatch();
+    }
+
+    /**
+     * @param name
+     * @return the running arena, null if none by that name.
+     */
+    public Arena getArena(String name) {
+        return arenas.get(name);
+    }
+
+    /**
+     * @return the running arenas.
+     */
+    public Collection<Arena> getArenas() {
+        return arenas.values();
+    }
+
+    /**
+     * @return number of running arenas.
+     */
+    public int getArenaCount() {
+        return arenas.size();
+    }
+
+    /**
+     * @return number of matches played to the end so far.
+     */
+    public long getFinishedCount() {
+        return finishedCount.get();
+    }
+
+    /**
+     * @return number of arenas closed before their match was over.
+     */
+    public long getClosedCount() {
+        return closedCount.get();
+    }
+
+    /**
+     * @param matchListener told when the match of any arena is over, on the
+     * thread ending it.
+     */
+    public void setMatchListener(MatchListener matchListener) {
+        this.matchListener = matchListener;
+    }
+
+    /**
+     * Closes all the arenas and stops the threads.
+     */
+    public void shutdown() {
+        List<Arena> running = new ArrayList<Arena>(arenas.values());
+        for (Arena arena : running) {
+            close(arena);
+        }
+        coordinators.shutdown();
+        scheduler.shutdown();
+    }
+}
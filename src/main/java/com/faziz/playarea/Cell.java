@@ -3,18 +3,23 @@ package com.faziz.playarea;
 /**
  * A particular location on the play area.
  * 
+ * Cell is only a view on the play area grid, the occupancy itself lives in the
+ * grid as player ids.
+ * 
  * @author faziz
  */
 public class Cell {
-    private Player player = null;
     private PlayArea playArea = null;
     private int row;
     private int column;
+    /** Slot of this cell in the play area grid. */
+    private long index;
 
     public Cell(int row, int column, PlayArea playArea) {
         this.row = row;
         this.column = column;
         this.playArea = playArea;
+        this.index = playArea.getGrid().index(row, column);
     }
 
     /**
@@ -31,40 +36,55 @@ public class Cell {
         return column;
     }
 
+    /**
+     * @return the index
+     */
+    public long getIndex() {
+        return index;
+    }
+
     /**
      * @return the player
      */
     public Player getPlayer() {
-        return player;
+        return playArea.getPlayer(playArea.getGrid().get(index));
     }
     
     public boolean isTopLeft(){
         return (row == 0 && column == 0) ? true: false;
     }
     public boolean isTopRight(){
-        return (row == 0 && column == PlayArea.MATRIX_SIZE - 1) ? true: false;
+        return (row == 0 && column == lastColumn()) ? true: false;
     }
     public boolean isBottomLeft(){
-        return (row == PlayArea.MATRIX_SIZE - 1 && column == 0) ? true: false;
+        return (row == lastRow() && column == 0) ? true: false;
     }
     public boolean isBottomRight(){
-        return ( row == PlayArea.MATRIX_SIZE - 1 && column == PlayArea.MATRIX_SIZE - 1) ? true: false;
+        return ( row == lastRow() && column == lastColumn()) ? true: false;
     }
     
     public boolean isLeftEdge(){
-        return (column == 0 && row > 0 && row < PlayArea.MATRIX_SIZE -1) ? true: false;
+        return (column == 0 && row > 0 && row < lastRow()) ? true: false;
     }
     
     public boolean isTopEdge(){
-        return (row == 0 && column > 0 && column < PlayArea.MATRIX_SIZE -1) ? true: false;
+        return (row == 0 && column > 0 && column < lastColumn()) ? true: false;
     }
     
     public boolean isRightEdge(){
-        return (column == PlayArea.MATRIX_SIZE -1 && row > 0 && row < PlayArea.MATRIX_SIZE -1) ? true: false;
+        return (column == lastColumn() && row > 0 && row < lastRow()) ? true: false;
     }
     
     public boolean isBottomEdge(){
-        return (row == PlayArea.MATRIX_SIZE -1 && column > 0 && column < PlayArea.MATRIX_SIZE -1) ? true: false;
+        return (row == lastRow() && column > 0 && column < lastColumn()) ? true: false;
+    }
+
+    private int lastRow() {
+        return playArea.getGrid().getRows() - 1;
+    }
+
+    private int lastColumn() {
+        return playArea.getGrid().getColumns() - 1;
     }
 
     /**
@@ -99,11 +119,15 @@ public class Cell {
      * @param player the player to set
      */
     public void setPlayer(Player player) {
-        this.player = player;
+        if (player == null) {
+            playArea.getGrid().clear(index);
+        } else {
+            playArea.getGrid().set(index, player.getId());
+        }
     }
     
     public boolean isOccupied(){
-        return (player == null) ? false: true;
+        return playArea.getGrid().isOccupied(index);
     }
     
     public boolean isEmpty(){
@@ -131,6 +155,6 @@ public class Cell {
 
     @Override
     public String toString() {
-        return "Row: " + row + ", Column: " + column + ", Player: " + player;
+        return "Row: " + row + ", Column: " + column + ", Player: " + getPlayer();
     }    
 }
@@ -0,0 +1,16 @@
+package com.faziz.playarea;
+
+/**
+ * Told by the play area when the match is over.
+ *
+ * @author faziz
+ */
+public interface MatchListener {
+
+    /**
+     * Called once, after the play area has stopped the players.
+     * @param playArea
+     * @param winner last player in the play, null if nobody is left.
+     */
+    void matchFinished(PlayArea playArea, Player winner);
+}
@@ -0,0 +1,308 @@
+package com.faziz.playarea;
+
+import com.faziz.playarea.grid.Grid;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binary snapshot of a match in a memory mapped file, to restart it from after
+ * a crash.
+ *
+ * The grid is not written: the occupied cells are the cells of the players in
+ * the play, so the player registry is all there is to a match. The file holds
+ * a header of <code>HEADER_SIZE</code> bytes, then the registry columns for
+ * the ids below the id bound, slot 0 included:
+ * <pre>
+ * long cell      x bound
+ * int  flags     x bound
+ * int  evictions x bound
+ * byte status    x bound
+ * </pre>
+ * followed by the player names, from id 1 on, each as an int length and as
+ * many bytes of UTF-8. Numbers are little endian.
+ *
+ * Taking a snapshot stops the moves for the whole copy of the columns into the
+ * mapping. The file is mapped and its pages touched before, so the moves only
+ * wait for the copy itself; should players have joined meanwhile the file is
+ * mapped again for them. The names never change, they are written after the
+ * moves go on. The snapshot is written to a file next to the target and moved
+ * over it once complete, so a crash while writing leaves the previous snapshot
+ * in place.
+ *
+ * A snapshot keeps neither the random source nor the pending moves: the
+ * restored players start moving afresh, and the evicted players due to return
+ * wait for the referee from the start.
+ *
+ * @author faziz
+ */
+public class MatchSnapshot implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(MatchSnapshot.class.getName());
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** First int of the file. */
+    public static final int MAGIC = 0x504c5331;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    /** Bytes of registry state per player id. */
+    private static final int BYTES_PER_PLAYER = 8 + 4 + 4 + 1;
+    /** Smallest page size of the usual platforms, the stride pages are touched with. */
+    private static final int PAGE_SIZE = 4096;
+
+    /** Offsets in the header. */
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int ROWS_OFFSET = 8;
+    private static final int COLUMNS_OFFSET = 12;
+    private static final int ID_BOUND_OFFSET = 16;
+    private static final int ACTIVE_COUNT_OFFSET = 20;
+    private static final int CREATED_OFFSET = 24;
+    private static final int NAMES_OFFSET = 32;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Opens a snapshot to restore a match from.
+     * @param path
+     * @throws IOException
+     */
+    public MatchSnapshot(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        long length = file.length();
+        if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+            file.close();
+            throw new IOException(path + " is not a match snapshot.");
+        }
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+            file.close();
+            throw new IOException(path + " is not a match snapshot of version " + VERSION + ".");
+        }
+    }
+
+    /**
+     * Writes a snapshot of the match. The moves are stopped while the registry
+     * is copied, so not for play areas with direct moves. The file is mapped
+     * before they are stopped, and again if players joined in the meantime.
+     * @param playArea
+     * @param path file to write, replaced once the snapshot is complete.
+     * @return number of players in the snapshot.
+     * @throws IOException
+     */
+    public static int take(PlayArea playArea, File path) throws IOException {
+        long start = System.nanoTime();
+        File temporary = new File(path.getPath() + ".tmp");
+        RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+        int bound;
+        long paused;
+        try {
+            file.setLength(0);
+            PlayerRegistry registry = playArea.getRegistry();
+            MappedByteBuffer buffer = null;
+            int mapped = -1;
+            while (true) {
+                int wanted = registry.getIdBound();
+                if (wanted != mapped) {
+                    buffer = map(file, wanted);
+                    mapped = wanted;
+                }
+                int[] locked = playArea.lockMoves();
+                long lockedAt = System.nanoTime();
+                try {
+                    bound = registry.getIdBound();
+                    if (bound == mapped) {
+                        buffer.putInt(ID_BOUND_OFFSET, bound);
+                        buffer.putInt(ACTIVE_COUNT_OFFSET, registry.getActiveCount());
+                        buffer.position(HEADER_SIZE);
+                        registry.write(buffer, bound);
+                    }
+                } finally {
+                    playArea.unlockMoves(locked);
+                }
+                paused = System.nanoTime() - lockedAt;
+                if (bound == mapped) {
+                    break;
+                }
+            }
+
+            Grid grid = playArea.getGrid();
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            buffer.putInt(VERSION_OFFSET, VERSION);
+            buffer.putInt(ROWS_OFFSET, grid.getRows());
+            buffer.putInt(COLUMNS_OFFSET, grid.getColumns());
+            buffer.putLong(CREATED_OFFSET, System.currentTimeMillis());
+            long namesOffset = (HEADER_SIZE + (long) bound * BYTES_PER_PLAYER + 7) & ~7L;
+            buffer.putLong(NAMES_OFFSET, namesOffset);
+            buffer.force();
+            writeNames(file, namesOffset, registry, bound);
+            file.getChannel().force(true);
+        } finally {
+            file.close();
+        }
+        Files.move(temporary.toPath(), path.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        if (logger.isLoggable(Level.INFO)) {
+            logger.log(Level.INFO, "Snapshot of {0} players taken in {1} ms, moves stopped for {2} ms.",
+                new Object[]{bound - 1, (System.nanoTime() - start) / 1000000,
+                    paused / 1000000.0});
+        }
+        return bound - 1;
+    }
+
+    /**
+     * Maps the header and the columns for the ids below the bound, touching
+     * every page so none is faulted in while the moves are stopped.
+     */
+    private static MappedByteBuffer map(RandomAccessFile file, int bound) throws IOException {
+        long size = HEADER_SIZE + (long) bound * BYTES_PER_PLAYER;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Too many players for a snapshot: " + bound);
+        }
+        MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        for (int offset = 0; offset < size; offset += PAGE_SIZE) {
+            buffer.put(offset, (byte) 0);
+        }
+        return buffer;
+    }
+
+    private static void writeNames(RandomAccessFile file, long offset, PlayerRegistry registry,
+            int bound) throws IOException {
+        byte[][] names = new byte[bound][];
+        long size = 0;
+        for (int id = 1; id < bound; id++) {
+            String name = registry.getPlayer(id).getName();
+            names[id] = (name == null) ? null : name.getBytes(UTF_8);
+            size += 4 + ((name == null) ? 0 : names[id].length);
+        }
+        if (offset + size > Integer.MAX_VALUE) {
+            throw new IOException("Player names too long for a snapshot.");
+        }
+        MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+            offset, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        for (int id = 1; id < bound; id++) {
+            if (names[id] == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(names[id].length);
+                buffer.put(names[id]);
+            }
+        }
+        buffer.force();
+    }
+
+    /**
+     * Puts the players of the snapshot back into the play area, which has to
+     * be of the same size and have no players yet. Players in the play are put
+     * back on their cells, the evicted ones due to return are handed to the
+     * referee again. The play area is then activated and the players set going
+     * as usual.
+     * @param playArea
+     * @param referee
+     * @return number of players in the play.
+     */
+    public int restore(PlayArea playArea, Referee referee) {
+        Grid grid = playArea.getGrid();
+        if (grid.getRows() != getRows() || grid.getColumns() != getColumns()) {
+            throw new IllegalArgumentException("Snapshot is of a " + getRows() + "x"
+                + getColumns() + " play area.");
+        }
+        if (playArea.getRegistry().getIdBound() != 1) {
+            throw new IllegalStateException("Play area has players already.");
+        }
+        int bound = getIdBound();
+        ByteBuffer names = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        names.position((int) buffer.getLong(NAMES_OFFSET));
+        for (int id = 1; id < bound; id++) {
+            int length = names.getInt();
+            String name = null;
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                names.get(bytes);
+                name = new String(bytes, UTF_8);
+            }
+            Player player = new Player(playArea, referee, name);
+            int evictionCount = getEvictionCount(id);
+            byte playerStatus = getStatus(id);
+            playArea.restorePlayer(player, getCell(id), getFlagCount(id), evictionCount, 
+                playerStatus);
+            if (playerStatus == PlayerRegistry.EVICTED && evictionCount < 2) {
+                player.requestRefereeForReintroduction();
+            }
+        }
+        logger.log(Level.INFO, "Restored {0} players, {1} in the play.",
+            new Object[]{bound - 1, playArea.getPlayerCount()});
+        return playArea.getPlayerCount();
+    }
+
+    public int getRows() {
+        return buffer.getInt(ROWS_OFFSET);
+    }
+
+    public int getColumns() {
+        return buffer.getInt(COLUMNS_OFFSET);
+    }
+
+    /**
+     * @return bound of the player ids, ids run from 1 to below it.
+     */
+    public int getIdBound() {
+        return buffer.getInt(ID_BOUND_OFFSET);
+    }
+
+    /**
+     * @param id
+     * @return cell of the player, stale unless the player is in the play.
+     */
+    public long getCell(int id) {
+        return buffer.getLong(HEADER_SIZE + id * 8);
+    }
+
+    public int getFlagCount(int id) {
+        return buffer.getInt(HEADER_SIZE + getIdBound() * 8 + id * 4);
+    }
+
+    public int getEvictionCount(int id) {
+        return buffer.getInt(HEADER_SIZE + getIdBound() * 12 + id * 4);
+    }
+
+    /**
+     * @param id
+     * @return a <code>PlayerRegistry</code> status.
+     */
+    public byte getStatus(int id) {
+        return buffer.get(HEADER_SIZE + getIdBound() * 16 + id);
+    }
+
+    /**
+     * @return number of players in the play when the snapshot was taken.
+     */
+    public int getActiveCount() {
+        return buffer.getInt(ACTIVE_COUNT_OFFSET);
+    }
+
+    /**
+     * @return time the snapshot was taken, in milliseconds since the epoch.
+     */
+    public long getCreated() {
+        return buffer.getLong(CREATED_OFFSET);
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,27 @@
+package com.faziz.playarea;
+
+/**
+ * Outcome of a movement request.
+ *
+ * @author faziz
+ */
+public enum MoveVerdict {
+
+    /** Player moved to the requested cell. */
+    ACCEPTED,
+    /** Player moved, but too close to another player and got flagged. */
+    FOULED,
+    /** Player fouled for the second time and was taken out of the play. */
+    EVICTED,
+    /** Requested cell is occupied or off the play area, player stays put. */
+    REJECTED,
+    /** Player was no longer in the play when the request was handled. */
+    IGNORED;
+
+    /**
+     * @return true if the player ended up in the requested cell.
+     */
+    public boolean isMoved() {
+        return this == ACCEPTED || this == FOULED;
+    }
+}
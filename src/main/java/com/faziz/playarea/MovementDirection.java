@@ -5,5 +5,29 @@ package com.faziz.playarea;
  * @author faziz
  */
 public enum MovementDirection {
-    LEFT, TOP, RIGHT, BOTTOM
+    LEFT(0, -1), TOP(-1, 0), RIGHT(0, 1), BOTTOM(1, 0);
+
+    /** Row offset of the cell in this direction. */
+    private final int rowOffset;
+    /** Column offset of the cell in this direction. */
+    private final int columnOffset;
+
+    private MovementDirection(int rowOffset, int columnOffset) {
+        this.rowOffset = rowOffset;
+        this.columnOffset = columnOffset;
+    }
+
+    /**
+     * @return the rowOffset
+     */
+    public int getRowOffset() {
+        return rowOffset;
+    }
+
+    /**
+     * @return the columnOffset
+     */
+    public int getColumnOffset() {
+        return columnOffset;
+    }
 }
@@ -0,0 +1,351 @@
+package com.faziz.playarea;
+
+import com.faziz.playarea.channel.RequestChannel;
+import com.faziz.playarea.channel.RequestHandler;
+import com.faziz.playarea.channel.RingBufferChannel;
+import com.faziz.playarea.channel.WaitStrategy;
+import com.faziz.playarea.grid.DenseGrid;
+import com.faziz.playarea.grid.Grid;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Coordinates the movement requests with one thread per tile of the grid, in
+ * place of the single play area thread.
+ *
+ * The grid is split into <code>tileRows</code> by <code>tileColumns</code> tiles.
+ * Each tile has its own request channel, worker thread and lock.
+ * <ul>
+ * <li>A request goes to the tile holding the player's current cell, once a
+ * player moves into another tile its next requests go to that tile's worker.</li>
+ * <li>Before judging a move the worker locks every tile the move reads or writes:
+ * the player's cell, the cell moved into and the neighbours of both, which the
+ * referee checks for fouls and whose neighbour counts the grid updates. These
+ * are a few tiles at most, always locked in tile order, so workers meeting at a
+ * tile boundary cannot deadlock.</li>
+ * <li>Players returning to the play are placed under the locks of the tiles
+ * around their cell.</li>
+ * </ul>
+ * A move inside a tile only takes the uncontended lock of its own tile.
+ *
+ * @author faziz
+ */
+public class PartitionedCoordinator {
+
+    private static final Logger logger = Logger.getLogger(PartitionedCoordinator.class.getName());
+    private static final MovementDirection[] DIRECTIONS = MovementDirection.values();
+
+    private final PlayArea playArea;
+    private final int tileRows;
+    private final int tileColumns;
+    /** Rows and columns of the grid per tile, the last tiles may be smaller. */
+    private final int tileHeight;
+    private final int tileWidth;
+    private final Tile[] tiles;
+    /** Worker thread of each tile, once started. */
+    private Thread[] workers = null;
+
+    /**
+     * @param playArea
+     * @param tileRows number of tiles down the grid.
+     * @param tileColumns number of tiles across the grid.
+     * @param channelCapacity capacity of the request channel of each tile.
+     */
+    public PartitionedCoordinator(PlayArea playArea, int tileRows, int tileColumns,
+            int channelCapacity) {
+        Grid grid = playArea.getGrid();
+        if (!(grid instanceof DenseGrid)) {
+            throw new IllegalStateException("Partitioning needs a dense grid, the sparse "
+                + "grid is a single shared table.");
+        }
+        this.playArea = playArea;
+        this.tileRows = Math.min(tileRows, grid.getRows());
+        this.tileColumns = Math.min(tileColumns, grid.getColumns());
+        this.tileHeight = (grid.getRows() + this.tileRows - 1) / this.tileRows;
+        this.tileWidth = (grid.getColumns() + this.tileColumns - 1) / this.tileColumns;
+        this.tiles = new Tile[this.tileRows * this.tileColumns];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new Tile(i, new RingBufferChannel(channelCapacity, WaitStrategy.PARK));
+        }
+    }
+
+    /**
+     * Starts the tile workers.
+     */
+    public void start() {
+        logger.log(Level.INFO, "Starting {0} tile workers.", tiles.length);
+        Thread[] threads = new Thread[tiles.length];
+        for (Tile tile : tiles) {
+            threads[tile.id] = new Thread(tile, "tile-" + tile.id);
+        }
+        workers = threads;
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Hands the request to the worker of the tile the player is in.
+     * @param player
+     * @param direction
+     * @throws InterruptedException
+     */
+    public void requestMove(Player player, MovementDirection direction)
+            throws InterruptedException {
+        tiles[tileOf(player.getCellIndex())].channel.put(player, direction);
+    }
+
+    /**
+     * Hands the request to the worker of the tile the player is in, unless its
+     * channel is full.
+     * @param player
+     * @param direction
+     * @return false if the request was not taken.
+     */
+    public boolean offerMove(Player player, MovementDirection direction) {
+        return tiles[tileOf(player.getCellIndex())].channel.offer(player, direction);
+    }
+
+    /**
+     * Locks the tiles holding the cell and its neighbours, for changes outside
+     * of the workers.
+     * @param index
+     * @return the tiles locked, to be passed to <code>unlock</code>.
+     */
+    public int[] lockAround(long index) {
+        Grid grid = playArea.getGrid();
+        int[] locked = new int[5];
+        int count = addTile(locked, 0, tileOf(index));
+        for (MovementDirection direction : DIRECTIONS) {
+            long neighbour = grid.neighbour(index, direction);
+            if (neighbour != Grid.NO_CELL) {
+                count = addTile(locked, count, tileOf(neighbour));
+            }
+        }
+        locked = Arrays.copyOf(locked, count);
+        for (int tile : locked) {
+            tiles[tile].lock.lock();
+        }
+        return locked;
+    }
+
+    /**
+     * @return requests waiting in the channels of all the tiles.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Tile tile : tiles) {
+            depth += tile.channel.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Locks every tile, stopping all the moves, for a consistent view of the
+     * whole play area.
+     * @return the tiles locked, to be passed to <code>unlock</code>.
+     */
+    public int[] lockAll() {
+        int[] locked = new int[tiles.length];
+        for (int tile = 0; tile < tiles.length; tile++) {
+            locked[tile] = tile;
+            tiles[tile].lock.lock();
+        }
+        return locked;
+    }
+
+    /**
+     * @param locked tiles returned by <code>lockAround</code>.
+     */
+    public void unlock(int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            tiles[locked[i]].lock.unlock();
+        }
+    }
+
+    /** 
+     * Adds the tile keeping the first <code>count</code> entries of 
+     * <code>locked</code> sorted and free of repeats.
+     * @return the new count.
+     */
+    private static int addTile(int[] locked, int count, int tile) {
+        int i = count;
+        while (i > 0 && locked[i - 1] > tile) {
+            i--;
+        }
+        if (i > 0 && locked[i - 1] == tile) {
+            return count;
+        }
+        System.arraycopy(locked, i, locked, i + 1, count - i);
+        locked[i] = tile;
+        return count + 1;
+    }
+
+    /**
+     * Tells the tile workers the match is over. Each worker is the only
+     * consumer of its channel, so it clears the requests left in it itself on
+     * the way out; the caller only wakes the workers up.
+     */
+    public void stop() {
+        Thread[] threads = workers;
+        if (threads == null) {
+            return;
+        }
+        for (Thread thread : threads) {
+            if (thread != Thread.currentThread()) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return number of requests waiting over all tiles.
+     */
+    public int size() {
+        int size = 0;
+        for (Tile tile : tiles) {
+            size += tile.channel.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return number of tiles, and so of worker threads.
+     */
+    public int getTileCount() {
+        return tiles.length;
+    }
+
+    private int tileOf(long index) {
+        Grid grid = playArea.getGrid();
+        return (grid.row(index) / tileHeight) * tileColumns + grid.column(index) / tileWidth;
+    }
+
+    /**
+     * A part of the grid with the worker judging the moves starting in it.
+     */
+    private class Tile implements Runnable {
+
+        private final int id;
+        private final RequestChannel channel;
+        private final ReentrantLock lock = new ReentrantLock();
+        /** 
+         * Tiles locked for the move being judged, in locking order. Normally 
+         * four at most, eight with tiles a single cell wide and high.
+         */
+        private final int[] locked = new int[8];
+        private int lockedCount = 0;
+
+        Tile(int id, RequestChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+
+        public void run() {
+            int batchSize = playArea.getBatchSize();
+            PlayArea.Batch batch = new PlayArea.Batch(batchSize);
+            try {
+                work(batch, batchSize);
+            } finally {
+                channel.poll(new RequestHandler() {
+                    public void onRequest(Player player, MovementDirection direction) {
+                        player.cleanup();
+                    }
+                }, Integer.MAX_VALUE);
+            }
+        }
+
+        /**
+         * Judges the moves of the tile until the match is over.
+         */
+        private void work(PlayArea.Batch batch, int batchSize) {
+            while (!playArea.isFinished()) {
+                try {
+                    channel.drain(batch, batchSize);
+                } catch (InterruptedException ex) {
+                    if (playArea.isFinished()) {
+                        // Woken up by stop().
+                        return;
+                    }
+                    logger.log(Level.SEVERE, "Could not process requests.", ex);
+                    throw new IllegalStateException("Could not process requests.", ex);
+                }
+
+                int processed = 0;
+                while (processed < batch.count && playArea.getPlayerCount() > 1) {
+                    batch.verdicts[processed] = processMove(batch.players[processed],
+                        batch.directions[processed]);
+                    processed++;
+                }
+                for (int i = 0; i < processed; i++) {
+                    playArea.notifyPlayer(batch.players[i], batch.directions[i],
+                        batch.verdicts[i]);
+                }
+
+                if (playArea.getPlayerCount() <= 1) {
+                    for (int i = processed; i < batch.count; i++) {
+                        batch.players[i].cleanup();
+                    }
+                    playArea.finishMatch();
+                    break;
+                }
+                batch.clear();
+            }
+        }
+
+        /**
+         * Judges and applies the move holding the locks of all the tiles it
+         * touches.
+         */
+        private MoveVerdict processMove(Player player, MovementDirection direction) {
+            Grid grid = playArea.getGrid();
+            while (true) {
+                long from = player.getCellIndex();
+                if (from == Grid.NO_CELL) {
+                    return playArea.processMove(player, direction);
+                }
+                long to = grid.neighbour(from, direction);
+                lockTiles(grid, from, to);
+                try {
+                    // The player could have been placed again while we waited.
+                    if (player.getCellIndex() == from) {
+                        return playArea.processMove(player, direction);
+                    }
+                } finally {
+                    unlockTiles();
+                }
+            }
+        }
+
+        private void lockTiles(Grid grid, long from, long to) {
+            lockedCount = 0;
+            addAround(grid, from);
+            if (to != Grid.NO_CELL) {
+                addAround(grid, to);
+            }
+            for (int i = 0; i < lockedCount; i++) {
+                tiles[locked[i]].lock.lock();
+            }
+        }
+
+        /** Adds the tiles of the cell and its neighbours. */
+        private void addAround(Grid grid, long index) {
+            lockedCount = addTile(locked, lockedCount, tileOf(index));
+            for (MovementDirection direction : DIRECTIONS) {
+                long neighbour = grid.neighbour(index, direction);
+                if (neighbour != Grid.NO_CELL) {
+                    lockedCount = addTile(locked, lockedCount, tileOf(neighbour));
+                }
+            }
+        }
+
+        private void unlockTiles() {
+            for (int i = lockedCount - 1; i >= 0; i--) {
+                tiles[locked[i]].lock.unlock();
+            }
+            lockedCount = 0;
+        }
+    }
+}
@@ -1,19 +1,38 @@
 package com.faziz.playarea;
 
+import com.faziz.playarea.channel.BlockingQueueChannel;
+import com.faziz.playarea.channel.CoalescingChannel;
+import com.faziz.playarea.channel.OverloadPolicy;
+import com.faziz.playarea.channel.RequestChannel;
+import com.faziz.playarea.channel.RequestHandler;
+import com.faziz.playarea.grid.BitBoard;
+import com.faziz.playarea.grid.ConcurrentGrid;
+import com.faziz.playarea.grid.FreeCellIndex;
+import com.faziz.playarea.grid.Grid;
+import com.faziz.playarea.grid.GridMode;
+import com.faziz.playarea.journal.MoveJournal;
+import com.faziz.playarea.metrics.PlayAreaMetrics;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.commons.lang.math.RandomUtils;
 
 /**
  * This class acts a coordinator. It coordinates the players movements, as well as
  * foul play.
  * 
- * It uses <code>ArrayBlockingQueue</code> to process players movement requests.
+ * It uses a <code>RequestChannel</code>, by default on an <code>ArrayBlockingQueue</code>,
+ * to process players movement requests.
  * 
  * @author faziz
  */
@@ -22,31 +41,126 @@ public class PlayArea implements Runnable {
     /** Logger for this class. */
     private static final Logger logger = Logger.getLogger(PlayArea.class.getName());
     private Referee referee = null;
-    /** Matrix size of the play area. */
-    public static final int MATRIX_SIZE = 100;
-    /** Play area matrix. */
-    private Cell[][] playAreaCells = new Cell[MATRIX_SIZE][MATRIX_SIZE];
+    /** Matrix size of the play area, unless given otherwise. */
+    public static final int DEFAULT_MATRIX_SIZE = 100;
+    /** 
+     * Largest dense grid getting a free cell index, which costs two ints per
+     * cell. Larger grids pick random cells until they find an empty one.
+     */
+    private static final long FREE_CELL_INDEX_MAX_CELLS = 1L << 24;
+    /** Batches handled in one go on the coordinator pool, before other play areas. */
+    private static final int POOLED_BATCHES = 16;
+    /** Play area matrix, holding the id of the player occupying each cell. */
+    private Grid grid = null;
+    /** 
+     * Players by id with their state, slot 0 is never used as it marks an
+     * empty cell. Only registered players will be able to make movement 
+     * requests.
+     */
+    private final PlayerRegistry registry = new PlayerRegistry();
+    /** How the players are driven. */
+    private PlayerRuntime playerRuntime = PlayerRuntime.TIMER;
+    /** Creates the player threads in <code>PlayerRuntime.THREAD</code>. */
+    private PlayerThreadFactory playerThreadFactory = null;
+    /** 
+     * Shared scheduler running the delayed actions of all the players, created
+     * on first use unless set.
+     */
+    private volatile PlayerScheduler scheduler = null;
+    /** If true the scheduler is shared with other play areas, not shut down. */
+    private boolean schedulerShared = false;
+    /** Source of the random placements and player directions. */
+    private Random random = new Random();
 
-    private PlayArea() {
-        initializePlayAreaCells();
+    /**
+     * Creates a play area of its own, apart from the one of 
+     * <code>getInstance</code>. Used by simulations running several matches in 
+     * one process.
+     * @param rows
+     * @param columns
+     * @param gridMode
+     */
+    public PlayArea(int rows, int columns, GridMode gridMode) {
+        initializePlayAreaCells(rows, columns, gridMode);
     }
-    private static PlayArea PLAYAREA = new PlayArea();
+    private static PlayArea PLAYAREA = null;
 
     public static PlayArea getInstance() {
+        return getInstance(DEFAULT_MATRIX_SIZE, DEFAULT_MATRIX_SIZE);
+    }
+
+    /**
+     * Returns the play area, creating it with the dimensions on the first call.
+     * Later calls return the same play area whatever dimensions they ask for.
+     * @param rows
+     * @param columns
+     * @return 
+     */
+    public static PlayArea getInstance(int rows, int columns) {
+        return getInstance(rows, columns, GridMode.DENSE);
+    }
+
+    /**
+     * Returns the play area, creating it with the dimensions and grid mode on 
+     * the first call.
+     * @param rows
+     * @param columns
+     * @param gridMode dense for crowded boards, sparse for huge mostly empty ones.
+     * @return 
+     */
+    public synchronized static PlayArea getInstance(int rows, int columns, GridMode gridMode) {
+        if (PLAYAREA == null) {
+            PLAYAREA = new PlayArea(rows, columns, gridMode);
+        }
         return PLAYAREA;
     }
     
     /** 
-     * Currently registered players. Only registered players will be able to make
-     * movement requests.
+     * Channel to hold on to the movement requests. Serve the request in 
+     * FIFO manner.
      */
-    private Set<Player> registeredPlayers = new HashSet<Player>();
-    
+    private RequestChannel channel = new BlockingQueueChannel(100, true);
+    /** Maximum number of requests handled in one go by the coordinator. */
+    private int batchSize = 1;
+    /** Tile workers replacing the single coordinator thread, if partitioned. */
+    private PartitionedCoordinator partitions = null;
+    /** If true the players apply their own moves, without a coordinator. */
+    private boolean directMoves = false;
+    /** If true the moves are judged one by one on the requesting thread. */
+    private boolean synchronousMoves = false;
     /** 
-     * Blocking queue to hold on to the movement requests. Serve the request in 
-     * FIFO manner.
+     * Held by the coordinator while it changes the grid, and by registrations
+     * from other threads, unless partitioned or moving directly.
      */
-    private BlockingQueue<MoveRequest> queue = new ArrayBlockingQueue<MoveRequest>(100, true);
+    private final ReentrantLock gridLock = new ReentrantLock();
+    /** Records the placements and judged moves, if set. */
+    private MoveJournal journal = null;
+    /** Counts the verdicts and their latency, if set. */
+    private PlayAreaMetrics metrics = null;
+    /** Threads shared with other play areas handling the requests, if set. */
+    private Executor coordinatorPool = null;
+    /** Set while a task handling the requests is on the coordinator pool. */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    /** Batch of the tasks on the coordinator pool, one at a time. */
+    private Batch pooledBatch = null;
+    private final Runnable drainTask = new Runnable() {
+        public void run() {
+            drainPending();
+        }
+    };
+    /** Set once the play area is activated, a match can not end before. */
+    private volatile boolean activated = false;
+    /** Set once the match is over. */
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    /** Released once the match is over and cleaned up. */
+    private final CountDownLatch finishedLatch = new CountDownLatch(1);
+    /** Told when the match is over, by default ends the process. */
+    private MatchListener matchListener = new MatchListener() {
+        public void matchFinished(PlayArea playArea, Player winner) {
+            //TODOL: Ugly hack.
+            System.exit(0);
+        }
+    };
 
     /**
      * Called by the player to the playarea to make a move request.
@@ -55,56 +169,429 @@ public class PlayArea implements Runnable {
      */
     public void requestMove(Player player, MovementDirection direction) {
         try {
-            if(registeredPlayers.contains(player))
-                queue.put(new MoveRequest(player, direction));
+            if (finished.get() || !registry.isActive(player.getId())) {
+                return;
+            }
+            if (metrics != null) {
+                registry.setRequestTime(player.getId(), System.nanoTime());
+            }
+            if (directMoves || synchronousMoves) {
+                MoveVerdict verdict = directMoves ? processMoveDirect(player, direction) 
+                    : processMove(player, direction);
+                notifyPlayer(player, direction, verdict);
+                if (registry.getActiveCount() <= 1) {
+                    finishMatch();
+                }
+            } else if (partitions != null) {
+                partitions.requestMove(player, direction);
+            } else if (channel instanceof CoalescingChannel) {
+                // Sheds instead of waiting. A shed move is a rejected one, else
+                // the player waits for its verdict forever; with REJECT the shed
+                // handler has told the player already.
+                if (channel.offer(player, direction)) {
+                    if (coordinatorPool != null) {
+                        scheduleDrain();
+                    }
+                } else if (((CoalescingChannel) channel).getPolicy() != OverloadPolicy.REJECT) {
+                    player.rejectMoveRequest(direction);
+                }
+            } else {
+                channel.put(player, direction);
+                if (coordinatorPool != null) {
+                    scheduleDrain();
+                }
+            }
         } catch (InterruptedException ex) {
             logger.log(Level.SEVERE, "Could not put new request, queue exhausted.", ex);
             throw new IllegalStateException("Could not put new request, queue exhausted.", ex);
         }
     }
+
+    /**
+     * Same as <code>requestMove</code>, but never waits for room in the request
+     * channel. Direct and synchronous moves are made right away.
+     * @param player
+     * @param direction
+     * @return false if the request was not taken: the match is over, the
+     * player is out of the play or the channel shed the request.
+     */
+    public boolean offerMove(Player player, MovementDirection direction) {
+        if (finished.get() || !registry.isActive(player.getId())) {
+            return false;
+        }
+        if (directMoves || synchronousMoves) {
+            requestMove(player, direction);
+            return true;
+        }
+        if (metrics != null) {
+            registry.setRequestTime(player.getId(), System.nanoTime());
+        }
+        if (partitions != null) {
+            return partitions.offerMove(player, direction);
+        }
+        if (!channel.offer(player, direction)) {
+            return false;
+        }
+        if (coordinatorPool != null) {
+            scheduleDrain();
+        }
+        return true;
+    }
     
-    public void run() {
-        logger.log(Level.INFO, "Handling requests....");
+    /**
+     * Makes a move request without waiting, for drivers of players of their
+     * own, typically with <code>PlayerRuntime.EXTERNAL</code>. The future is
+     * completed with the verdict by the coordinator, along with the rest of
+     * its batch, once the batch has been judged. Stages added to it without an
+     * executor run on the coordinator thread, anything more than a new request
+     * belongs on an executor of the caller.
+     *
+     * A player has one request sent at a time: requests made meanwhile wait
+     * in a queue of the player and are sent one by one as the verdicts come,
+     * so they are judged in the order they were made. A request not taken by
+     * the request channel completes with a
+     * <code>RejectedExecutionException</code>, one of a player out of the play
+     * or made after the match is over with <code>MoveVerdict.IGNORED</code>.
+     * @param player
+     * @param direction
+     * @return future of the verdict.
+     */
+    public CompletableFuture<MoveVerdict> requestMoveAsync(Player player, 
+            MovementDirection direction) {
+        int id = player.getId();
+        if (finished.get() || !registry.isActive(id)) {
+            return CompletableFuture.completedFuture(MoveVerdict.IGNORED);
+        }
+        CompletableFuture<MoveVerdict> future = new CompletableFuture<MoveVerdict>();
+        PendingMoves moves = registry.pendingMoves(id);
+        synchronized (moves) {
+            if (moves.sent != null) {
+                moves.waiting.add(new PendingMove(direction, future));
+                return future;
+            }
+            moves.sent = future;
+        }
+        send(player, moves, direction);
+        return future;
+    }
+
+    /**
+     * Sends the request of the player the coordinator is to judge next. A
+     * request not taken is completed right away and the next one waiting sent
+     * in its place, so the requests are judged in the order they were made.
+     * @param player
+     * @param moves
+     * @param direction of the request sent.
+     */
+    private void send(Player player, PendingMoves moves, MovementDirection direction) {
+        int id = player.getId();
         while (true) {
-            try {
-                MoveRequest moveRequest = queue.take();                
-                Player player = moveRequest.getPlayer();
-                MovementDirection direction = moveRequest.getDirection();
-                logger.log(Level.INFO, "Move request for player:{0} in direction:{1}", 
-                    new Object[]{player, direction});
-                
-                if (referee.moveIsAllowed(player, direction)) {
-                    logger.info("move is allowed.");
-                    boolean moveIsFouled = referee.moveIsFouled(player, direction);
-                    if (moveIsFouled) {
-                        logger.info("move is fouled.");
-                        player.flag();
-                        
-                        if(player.isPlayerToBeRemoved()){
-                            referee.flagPlayer(player);
-                        }
-                    }
-                    
-                    movePlayer(player, direction);
-                    if (registeredPlayers.contains(player) == false && moveIsFouled == false) {
-                        registeredPlayers.add(player);
-                    }
-                } else {
-                    player.rejectMoveRequest(direction);                    
+            MoveVerdict verdict = MoveVerdict.IGNORED;
+            Throwable failure = null;
+            if (offerMove(player, direction)) {
+                if (!finished.get()) {
+                    return;
                 }
+                // Put after the channel was cleared at the end of the match.
+            } else if (!finished.get() && registry.isActive(id)) {
+                failure = new RejectedExecutionException(
+                    "Request channel did not take the move.");
+            }
+            PendingMove next = completeSent(moves, verdict, failure);
+            if (next == null) {
+                return;
+            }
+            direction = next.direction;
+        }
+    }
 
-                logger.log(Level.INFO, "Players in the system: {0}.", 
-                        registeredPlayers.size());
-                if (registeredPlayers.size() == 1) {
-                    cleanupAndShutdown();                    
-                    break;
-                }
+    /**
+     * Completes the future of the player's request sent, if there is one, and
+     * sends its next request waiting.
+     * @param id
+     * @param verdict
+     */
+    private void completeVerdict(int id, MoveVerdict verdict) {
+        PendingMoves moves = registry.getPendingMoves(id);
+        if (moves == null) {
+            return;
+        }
+        PendingMove next = completeSent(moves, verdict, null);
+        if (next != null) {
+            send(registry.getPlayer(id), moves, next.direction);
+        }
+    }
+
+    /**
+     * Completes the future of the request sent and makes the next request
+     * waiting the one sent.
+     * @return the request to send next, null if none.
+     */
+    private PendingMove completeSent(PendingMoves moves, MoveVerdict verdict, 
+            Throwable failure) {
+        CompletableFuture<MoveVerdict> future;
+        PendingMove next;
+        synchronized (moves) {
+            future = moves.sent;
+            if (future == null) {
+                return null;
+            }
+            next = moves.waiting.poll();
+            moves.sent = (next == null) ? null : next.future;
+        }
+        if (failure == null) {
+            future.complete(verdict);
+        } else {
+            future.completeExceptionally(failure);
+        }
+        return next;
+    }
+
+    /**
+     * Handles the movement requests. Up to <code>batchSize</code> queued requests
+     * are taken at a time, judged and applied one after the other, and the 
+     * players are notified of the outcome once the whole batch is done.
+     */
+    public void run() {
+        logger.log(Level.INFO, "Handling requests in batches of {0}....", batchSize);
+        Batch batch = new Batch(batchSize);
+        while (true) {
+            try {
+                channel.drain(batch, batchSize);
             } catch (InterruptedException ex) {
                 logger.log(Level.SEVERE, "Could not process requests.", ex);
                 throw new IllegalStateException("Could not process requests.", ex);
             }
+            if (!processBatch(batch)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Schedules the requests waiting to be handled on the coordinator pool,
+     * unless they already are.
+     */
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            coordinatorPool.execute(drainTask);
+        }
+    }
+
+    /**
+     * Handles the requests waiting, on a thread of the coordinator pool. After
+     * <code>POOLED_BATCHES</code> batches the thread is given up to the other
+     * play areas, the rest is handled by a task of its own.
+     */
+    private void drainPending() {
+        try {
+            for (int i = 0; i < POOLED_BATCHES && !finished.get(); i++) {
+                if (channel.poll(pooledBatch, batchSize) == 0 || !processBatch(pooledBatch)) {
+                    break;
+                }
+            }
+        } finally {
+            drainScheduled.set(false);
+        }
+        // A request put while the flag was still set is left to this check.
+        if (channel.size() > 0 && !finished.get()) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Judges and applies the batch, then notifies the players. Ends the match
+     * once at most one player is left.
+     * @param batch
+     * @return false once the match is over.
+     */
+    private boolean processBatch(Batch batch) {
+        int processed = 0;
+        gridLock.lock();
+        try {
+            while (processed < batch.count && registry.getActiveCount() > 1) {
+                batch.verdicts[processed] = processMove(batch.players[processed], 
+                    batch.directions[processed]);
+                processed++;
+            }
+        } finally {
+            gridLock.unlock();
+        }
+        for (int i = 0; i < processed; i++) {
+            notifyPlayer(batch.players[i], batch.directions[i], batch.verdicts[i]);
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Players in the system: {0}.", 
+                    registry.getActiveCount());
+        }
+        if (registry.getActiveCount() <= 1) {
+            for (int i = processed; i < batch.count; i++) {
+                batch.players[i].cleanup();
+            }
+            finishMatch();
+            return false;
+        }
+        batch.clear();
+        return true;
+    }
+
+    /**
+     * Judges the move with the referee and applies it to the play area. The 
+     * player is not notified, that is left to the caller.
+     * @param player
+     * @param direction
+     * @return verdict of the move.
+     */
+    MoveVerdict processMove(Player player, MovementDirection direction) {
+        long from = player.getCellIndex();
+        MoveVerdict verdict = judgeMove(player, direction);
+        recordMove(player.getId(), from, direction, verdict);
+        return verdict;
+    }
+
+    private MoveVerdict judgeMove(Player player, MovementDirection direction) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Move request for player:{0} in direction:{1}", 
+                new Object[]{player, direction});
+        }
+
+        if (!registry.isActive(player.getId())) {
+            logger.log(Level.FINE, "Player:{0} is out of the play.", player);
+            return MoveVerdict.IGNORED;
+        }
+        if (referee.moveIsAllowed(player, direction) == false) {
+            return MoveVerdict.REJECTED;
+        }
+
+        logger.fine("move is allowed.");
+        boolean moveIsFouled = referee.moveIsFouled(player, direction);
+        if (moveIsFouled) {
+            logger.fine("move is fouled.");
+            player.flag();
+            if (player.isPlayerToBeRemoved()) {
+                referee.flagPlayer(player);
+                return MoveVerdict.EVICTED;
+            }
         }
-    }    
+
+        movePlayer(player, direction);
+        return moveIsFouled ? MoveVerdict.FOULED : MoveVerdict.ACCEPTED;
+    }
+
+    /**
+     * Judges and applies the move on the calling thread, with players moving 
+     * concurrently.
+     * 
+     * The target cell is claimed with a compare and set, so two players can
+     * never end up in the same cell. The foul check runs after the claim: of two
+     * players moving next to each other at the same time, at least the second 
+     * one to check sees the other. Only then the old cell is released, so for a
+     * moment the player holds both cells. The player itself is only ever moved
+     * by one thread at a time, as it waits for the outcome of each request.
+     * @param player
+     * @param direction
+     * @return verdict of the move.
+     */
+    MoveVerdict processMoveDirect(Player player, MovementDirection direction) {
+        long from = player.getCellIndex();
+        MoveVerdict verdict = claimMove(player, direction);
+        recordMove(player.getId(), from, direction, verdict);
+        return verdict;
+    }
+
+    private MoveVerdict claimMove(Player player, MovementDirection direction) {
+        if (!registry.isActive(player.getId())) {
+            return MoveVerdict.IGNORED;
+        }
+        if (referee.moveIsAllowed(player, direction) == false) {
+            return MoveVerdict.REJECTED;
+        }
+        long from = player.getCellIndex();
+        long to = grid.neighbour(from, direction);
+        if (grid.compareAndSet(to, Grid.EMPTY, player.getId()) == false) {
+            return MoveVerdict.REJECTED;
+        }
+
+        boolean moveIsFouled = referee.moveIsFouled(player, direction);
+        if (moveIsFouled) {
+            player.flag();
+            if (player.isPlayerToBeRemoved()) {
+                grid.clear(to);
+                referee.flagPlayer(player);
+                return MoveVerdict.EVICTED;
+            }
+        }
+
+        player.setCellIndex(to);
+        grid.clear(from);
+        return moveIsFouled ? MoveVerdict.FOULED : MoveVerdict.ACCEPTED;
+    }
+
+    /**
+     * Records the judged move in the journal and the metrics, if any.
+     * @param playerId
+     * @param from cell of the player before the move.
+     * @param direction
+     * @param verdict 
+     */
+    void recordMove(int playerId, long from, MovementDirection direction, 
+            MoveVerdict verdict) {
+        if (metrics != null) {
+            metrics.recordVerdict(verdict);
+        }
+        if (journal != null) {
+            long to = (from == Grid.NO_CELL) ? Grid.NO_CELL : grid.neighbour(from, direction);
+            journal.moved(playerId, from, to, direction.ordinal(), verdict.ordinal(),
+                verdict == MoveVerdict.FOULED || verdict == MoveVerdict.EVICTED);
+        }
+    }
+
+    /**
+     * Ends the match, only the first call has any effect. The waiters are
+     * released once the journal is flushed and the threads are shut down.
+     */
+    void finishMatch() {
+        if (finished.compareAndSet(false, true)) {
+            try {
+                cleanupAndShutdown();
+            } finally {
+                finishedLatch.countDown();
+            }
+        }
+    }
+
+    /**
+     * Waits for the match to be over. With direct moves the play area has no
+     * thread of its own keeping the process alive.
+     * @throws InterruptedException
+     */
+    public void awaitFinish() throws InterruptedException {
+        finishedLatch.await();
+    }
+
+    /**
+     * Lets the player know the outcome of its request. Evicted players wait for
+     * the referee instead.
+     * @param player
+     * @param direction
+     * @param verdict 
+     */
+    void notifyPlayer(Player player, MovementDirection direction, MoveVerdict verdict) {
+        if (metrics != null) {
+            long requested = registry.getRequestTime(player.getId());
+            if (requested != 0) {
+                metrics.recordLatency(System.nanoTime() - requested);
+                registry.setRequestTime(player.getId(), 0);
+            }
+        }
+        if (verdict.isMoved()) {
+            player.moveAccepted();
+        } else if (verdict == MoveVerdict.REJECTED) {
+            player.rejectMoveRequest(direction);
+        }
+        completeVerdict(player.getId(), verdict);
+    }
 
     /**
      * Moves the player to the new cell.
@@ -112,24 +599,23 @@ public class PlayArea implements Runnable {
      * @param direction 
      */
     private final void movePlayer(Player player, MovementDirection direction) {
-        Cell newCell = player.getCell().getCellInDirection(direction);
-        newCell.setPlayer(player);
+        long from = player.getCellIndex();
+        long to = grid.neighbour(from, direction);
+        grid.set(to, player.getId());
+        grid.clear(from);
 
-        player.getCell().setPlayer(null);
-        player.setCell(newCell);
-        player.moveAccepted();
+        player.setCellIndex(to);
     }
 
     /**
-     * Initializing the matrix with cells.
+     * Initializing the matrix, all cells start empty.
      */
-    private final void initializePlayAreaCells() {
-        logger.log(Level.INFO, "Initializing the grid");
-        for (int row = 0; row < MATRIX_SIZE; row++) {
-            for (int column = 0; column < MATRIX_SIZE; column++) {
-                Cell cell = new Cell(row, column, this);
-                playAreaCells[row][column] = cell;
-            }
+    private final void initializePlayAreaCells(int rows, int columns, GridMode gridMode) {
+        logger.log(Level.INFO, "Initializing the {2} grid {0}x{1}", 
+            new Object[]{rows, columns, gridMode});
+        grid = gridMode.createGrid(rows, columns);
+        if (gridMode == GridMode.DENSE && grid.size() <= FREE_CELL_INDEX_MAX_CELLS) {
+            grid.enableFreeCellIndex();
         }
     }
 
@@ -142,11 +628,319 @@ public class PlayArea implements Runnable {
      * @return cell if found in the play area matrix or null.
      */
     public final Cell getCell(int row, int column) {
-        try {
-            return playAreaCells[row][column];
-        } catch (ArrayIndexOutOfBoundsException ex) {
+        if (grid.index(row, column) == Grid.NO_CELL) {
             return null;
         }
+        return new Cell(row, column, this);
+    }
+
+    /**
+     * Returns the cell at the grid index.
+     * @param index
+     * @return 
+     */
+    public final Cell getCell(long index) {
+        return new Cell(grid.row(index), grid.column(index), this);
+    }
+
+    /**
+     * @return the channel
+     */
+    public RequestChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Sets the channel carrying the movement requests to the coordinator, has
+     * to be called before the players start making requests.
+     * @param channel the channel to set
+     */
+    public void setChannel(RequestChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @return the batchSize
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets how many queued requests the coordinator handles in one go, has to
+     * be called before <code>activate()</code>.
+     * @param batchSize the batchSize to set
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size has to be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Splits the play area into tiles, each with its own worker thread judging
+     * the moves starting in it, instead of the single coordinator thread. Has to
+     * be called before <code>activate()</code>, needs a dense grid.
+     * @param tileRows number of tiles down the play area.
+     * @param tileColumns number of tiles across the play area.
+     */
+    public void setPartitions(int tileRows, int tileColumns) {
+        // Every tile worker would contend on it.
+        grid.disableFreeCellIndex();
+        partitions = new PartitionedCoordinator(this, tileRows, tileColumns, 
+            channel.capacity());
+    }
+
+    /**
+     * Lets the players apply their own moves on the thread making the request,
+     * instead of queueing them for a coordinator. Needs a concurrent grid.
+     * @param directMoves the directMoves to set
+     */
+    public void setDirectMoves(boolean directMoves) {
+        if (directMoves && !(grid instanceof ConcurrentGrid)) {
+            throw new IllegalStateException("Direct moves need a concurrent grid.");
+        }
+        this.directMoves = directMoves;
+    }
+
+    /**
+     * Judges each move right away on the thread requesting it, one at a time. 
+     * For play areas driven by a single thread, like the simulation on a 
+     * <code>VirtualTimeScheduler</code>.
+     * @param synchronousMoves the synchronousMoves to set
+     */
+    public void setSynchronousMoves(boolean synchronousMoves) {
+        this.synchronousMoves = synchronousMoves;
+    }
+
+    /**
+     * @return the directMoves
+     */
+    public boolean isDirectMoves() {
+        return directMoves;
+    }
+
+    /**
+     * Sets who is told when the match is over, in place of ending the process.
+     * @param matchListener the matchListener to set
+     */
+    public void setMatchListener(MatchListener matchListener) {
+        this.matchListener = matchListener;
+    }
+
+    /**
+     * @return true once the match is over.
+     */
+    public boolean isFinished() {
+        return finished.get();
+    }
+
+    /**
+     * @return number of players currently in the play.
+     */
+    public int getPlayerCount() {
+        return registry.getActiveCount();
+    }
+
+    /**
+     * @return the registry holding the state of the players.
+     */
+    public PlayerRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return bound of the player ids handed out so far, ids run from 1 to 
+     * below it.
+     */
+    int getPlayerIdBound() {
+        return registry.getIdBound();
+    }
+
+    /**
+     * @param player
+     * @return true if the player is in the play.
+     */
+    public boolean isRegistered(Player player) {
+        return registry.isActive(player.getId());
+    }
+
+    /**
+     * @return the playerRuntime
+     */
+    public PlayerRuntime getPlayerRuntime() {
+        return playerRuntime;
+    }
+
+    /**
+     * Sets how the players are driven, has to be called before <code>go()</code>.
+     * @param playerRuntime the playerRuntime to set
+     */
+    public void setPlayerRuntime(PlayerRuntime playerRuntime) {
+        this.playerRuntime = playerRuntime;
+        if (playerRuntime == PlayerRuntime.THREAD && playerThreadFactory == null) {
+            playerThreadFactory = new PlayerThreadFactory();
+        }
+    }
+
+    /**
+     * @return the playerThreadFactory
+     */
+    public PlayerThreadFactory getPlayerThreadFactory() {
+        return playerThreadFactory;
+    }
+
+    /**
+     * @return the scheduler
+     */
+    public PlayerScheduler getScheduler() {
+        PlayerScheduler current = scheduler;
+        if (current == null) {
+            synchronized (this) {
+                if (scheduler == null) {
+                    scheduler = new TimingWheelScheduler(Runtime.getRuntime().availableProcessors());
+                }
+                current = scheduler;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Replaces the scheduler, shutting down the current one. To be called 
+     * before the players are readied.
+     * @param scheduler the scheduler to set
+     */
+    public synchronized void setScheduler(PlayerScheduler scheduler) {
+        if (this.scheduler != null && !schedulerShared) {
+            this.scheduler.shutdown();
+        }
+        this.scheduler = scheduler;
+        this.schedulerShared = false;
+    }
+
+    /**
+     * Sets a scheduler shared with other play areas. It is left running when
+     * the match is over, the players' pending actions are cancelled instead.
+     * @param scheduler 
+     */
+    public synchronized void setSharedScheduler(PlayerScheduler scheduler) {
+        setScheduler(scheduler);
+        this.schedulerShared = true;
+    }
+
+    /**
+     * Lets the coordinator run on threads shared with other play areas instead
+     * of a thread of its own: the requests waiting are handled as a task on
+     * the pool, whenever there are any. Not for partitioned play areas. To be
+     * called before activating.
+     * @param coordinatorPool 
+     */
+    public void setCoordinatorPool(Executor coordinatorPool) {
+        this.coordinatorPool = coordinatorPool;
+    }
+
+    /**
+     * @return the random
+     */
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * Sets the source of randomness, a seeded one makes the placements and the
+     * player directions repeatable.
+     * @param random the random to set
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    public PlayAreaMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics the moves are recorded in, null for none.
+     * @param metrics 
+     */
+    public void setMetrics(PlayAreaMetrics metrics) {
+        if (metrics != null) {
+            registry.keepRequestTimes();
+        }
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return requests waiting for the coordinator or the tile workers.
+     */
+    public int getQueueDepth() {
+        return (partitions != null) ? partitions.getQueueDepth() : channel.size();
+    }
+
+    public MoveJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the journal recording the placements and judged moves, before any
+     * player is registered. The play area closes it when the match is over.
+     * @param journal 
+     */
+    public void setJournal(MoveJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return the grid
+     */
+    public Grid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Copies the occupied cells into the board, between two batches of moves.
+     * With partitions or direct moves the copy is taken while players move.
+     * @param board board of the grid's size, null for a new one.
+     * @return the board.
+     */
+    public BitBoard takeOccupancy(BitBoard board) {
+        if (board == null) {
+            board = new BitBoard(grid.getRows(), grid.getColumns());
+        }
+        gridLock.lock();
+        try {
+            board.copyFrom(grid);
+        } finally {
+            gridLock.unlock();
+        }
+        return board;
+    }
+
+    /**
+     * @return the players in the play standing next to another player.
+     */
+    public List<Player> getPlayersInFoulPosition() {
+        BitBoard fouls = takeOccupancy(null).inFoulPosition();
+        List<Player> players = new ArrayList<Player>();
+        for (long index = fouls.nextSetCell(0); index != Grid.NO_CELL;
+                index = fouls.nextSetCell(index + 1)) {
+            Player player = registry.getPlayer(grid.get(index));
+            if (player != null) {
+                players.add(player);
+            }
+        }
+        return players;
+    }
+
+    /**
+     * Returns the player with the id, or null for <code>Grid.EMPTY</code>.
+     * @param id
+     * @return 
+     */
+    public Player getPlayer(int id) {
+        return registry.getPlayer(id);
     }
 
     /**
@@ -157,66 +951,264 @@ public class PlayArea implements Runnable {
     }
 
     private void cleanupAndShutdown() {
-        ArrayList<MoveRequest> processess = new ArrayList<MoveRequest>();
-        queue.drainTo(processess);
-        for (MoveRequest moveRequest : processess) {
-            Player player = moveRequest.getPlayer();
-            player.cleanup();
-        }
-        Player winningPlayer = registeredPlayers.iterator().next();
-        logger.log(Level.INFO, "{0} won!", winningPlayer);
+        RequestHandler cleanup = new RequestHandler() {
+            public void onRequest(Player player, MovementDirection direction) {
+                player.cleanup();
+            }
+        };
+        channel.poll(cleanup, Integer.MAX_VALUE);
+        if (partitions != null) {
+            partitions.stop();
+        }
+        int bound = registry.getIdBound();
+        for (int id = 1; id < bound; id++) {
+            // Requests left unjudged, in the channel or at the end of the last batch.
+            completeVerdict(id, MoveVerdict.IGNORED);
+            if (schedulerShared) {
+                registry.getPlayer(id).cleanup();
+            }
+        }
+        if (!schedulerShared && scheduler != null) {
+            scheduler.shutdown();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Could not close the journal.", ex);
+            }
+        }
+        Player winningPlayer = null;
+        if (registry.getActiveCount() == 0) {
+            logger.info("Nobody won!");
+        } else {
+            winningPlayer = registry.firstActive();
+            logger.log(Level.INFO, "{0} won!", winningPlayer);
+        }
         
-        //TODOL: Ugly hack.
-        System.exit(0);
+        matchListener.matchFinished(this, winningPlayer);
     }
 
     /**
-     * Internal wrapper class.
+     * Asynchronous requests of a player: the one sent to the coordinator and
+     * the ones waiting for its verdict, oldest first. Guarded by its monitor.
      */
-    class MoveRequest {
+    static class PendingMoves {
 
-        private Player player = null;
-        private MovementDirection direction = null;
+        /** Future of the request sent, null if none. */
+        CompletableFuture<MoveVerdict> sent = null;
+        final ArrayDeque<PendingMove> waiting = new ArrayDeque<PendingMove>(2);
+    }
+
+    /**
+     * Request waiting for the verdict of the player's request sent.
+     */
+    static class PendingMove {
 
-        public MoveRequest(Player player, MovementDirection direction) {
-            this.player = player;
+        final MovementDirection direction;
+        final CompletableFuture<MoveVerdict> future;
+
+        PendingMove(MovementDirection direction, CompletableFuture<MoveVerdict> future) {
             this.direction = direction;
+            this.future = future;
         }
+    }
 
-        /**
-         * @return the player
-         */
-        public Player getPlayer() {
-            return player;
+    /**
+     * Requests taken off the channel by the coordinator in one go, along with
+     * their verdicts.
+     */
+    static class Batch implements RequestHandler {
+
+        final Player[] players;
+        final MovementDirection[] directions;
+        final MoveVerdict[] verdicts;
+        int count = 0;
+
+        Batch(int size) {
+            players = new Player[size];
+            directions = new MovementDirection[size];
+            verdicts = new MoveVerdict[size];
         }
 
-        /**
-         * @return the direction
-         */
-        public MovementDirection getDirection() {
-            return direction;
+        public void onRequest(Player player, MovementDirection direction) {
+            players[count] = player;
+            directions[count] = direction;
+            count++;
+        }
+
+        void clear() {
+            Arrays.fill(players, 0, count, null);
+            count = 0;
         }
     }
 
     /**
-     * Tries to fit a player to a randomly selected cell.
-     * Recursively calls itself until it finds an empty cell.
+     * Puts the player on a random empty cell.
      * @param player 
      */
     public void registerPlayer(Player player) {
-        int row = RandomUtils.nextInt(MATRIX_SIZE);
-        int column = RandomUtils.nextInt(MATRIX_SIZE);
+        long index = placeAnywhere(player);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Registering the player: {0} with cell: {1}", 
+                new Object[]{player, getCell(index)});
+        }
+        registry.activate(player.getId());
+    }
 
-        Cell cell = playAreaCells[row][column];
-        if (cell.isOccupied()) {
-            registerPlayer(player);
+    /**
+     * Registers all the players at once, as at the start of a match. Fails
+     * before placing anyone if the free cells are known to be too few.
+     * @param players 
+     */
+    public void registerPlayers(List<Player> players) {
+        FreeCellIndex freeCells = grid.getFreeCellIndex();
+        if (freeCells != null && freeCells.size() < players.size()) {
+            throw new IllegalStateException("Only " + freeCells.size() 
+                + " free cells left for " + players.size() + " players.");
+        }
+        for (Player player : players) {
+            placeAnywhere(player);
+            registry.activate(player.getId());
         }
+        logger.log(Level.INFO, "Registered {0} players.", players.size());
+    }
 
-        logger.log(Level.INFO, "Registering the player: {0} with cell: {1}", 
-            new Object[]{player, cell});
-        cell.setPlayer(player);
-        player.setCell(cell);
-        registeredPlayers.add(player);
+    /**
+     * Puts the player in the play on the given cell, handing out its id first
+     * if it has none. For placements recorded earlier.
+     * @param player
+     * @param index
+     * @return false if the cell is taken.
+     */
+    boolean registerPlayerAt(Player player, long index) {
+        if (player.getId() == Grid.EMPTY) {
+            assignPlayerId(player);
+        }
+        if (!placePlayer(player, index)) {
+            return false;
+        }
+        registry.activate(player.getId());
+        return true;
+    }
+
+    /**
+     * Places the player on a random empty cell, handing out its id first if it
+     * has none.
+     * @param player
+     * @return index of the cell.
+     */
+    private long placeAnywhere(Player player) {
+        if (player.getId() == Grid.EMPTY) {
+            assignPlayerId(player);
+        }
+        while (true) {
+            long index = grid.randomFreeCell(random);
+            if (index == Grid.NO_CELL) {
+                throw new IllegalStateException("No free cell left for " + player + ".");
+            }
+            // The cell may have been taken since it was picked.
+            if (placePlayer(player, index)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Puts the player on the cell if it is empty. The coordinator may be moving
+     * players around, so it holds the grid lock, or on a partitioned play area
+     * the locks of the tiles around the cell. Direct moves need no lock.
+     * @param player
+     * @param index
+     * @return true if the player was placed.
+     */
+    private boolean placePlayer(Player player, long index) {
+        int[] tiles = null;
+        if (partitions != null) {
+            tiles = partitions.lockAround(index);
+        } else if (!directMoves) {
+            gridLock.lock();
+        }
+        try {
+            if (grid.compareAndSet(index, Grid.EMPTY, player.getId()) == false) {
+                return false;
+            }
+            player.setCellIndex(index);
+            if (journal != null) {
+                journal.placed(player.getId(), index);
+            }
+            return true;
+        } finally {
+            if (partitions != null) {
+                partitions.unlock(tiles);
+            } else if (!directMoves) {
+                gridLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stops the moves, for a consistent view of the grid and the registry. The
+     * coordinator is held between two batches, a partitioned play area by the
+     * locks of all its tiles. Direct moves can not be stopped.
+     * @return the tiles locked, to be passed to <code>unlockMoves</code>.
+     */
+    int[] lockMoves() {
+        if (directMoves) {
+            throw new IllegalStateException("Direct moves can not be stopped.");
+        }
+        if (partitions != null) {
+            return partitions.lockAll();
+        }
+        gridLock.lock();
+        return null;
+    }
+
+    /**
+     * @param locked value of <code>lockMoves</code>.
+     */
+    void unlockMoves(int[] locked) {
+        if (partitions != null) {
+            partitions.unlock(locked);
+        } else {
+            gridLock.unlock();
+        }
+    }
+
+    /**
+     * Adds the player with the state it had in a snapshot. Players are
+     * restored in id order, into a play area with none yet, so each gets its
+     * old id back.
+     * @param player
+     * @param cell
+     * @param flagCount
+     * @param evictionCount
+     * @param status a <code>PlayerRegistry</code> status.
+     */
+    void restorePlayer(Player player, long cell, int flagCount, int evictionCount, 
+            byte status) {
+        assignPlayerId(player);
+        int id = player.getId();
+        registry.setCell(id, cell);
+        registry.setFlagCount(id, flagCount);
+        registry.setEvictionCount(id, evictionCount);
+        if (status == PlayerRegistry.NEW) {
+            return;
+        }
+        registry.activate(id);
+        if (status == PlayerRegistry.ACTIVE) {
+            grid.set(cell, id);
+        } else {
+            registry.evict(id);
+        }
+    }
+
+    /**
+     * Hands out the next player id and makes the player reachable by it.
+     * @param player 
+     */
+    private void assignPlayerId(Player player) {
+        player.setId(registry.add(player));
     }
     
     /**
@@ -224,8 +1216,18 @@ public class PlayArea implements Runnable {
      */
     public void activate(){
         logger.log(Level.INFO, "Activating playing area.");
-        Thread t = new Thread(this);
-        t.start();
+        activated = true;
+        if (directMoves || synchronousMoves) {
+            logger.log(Level.INFO, "Players move directly, no coordinator needed.");
+        } else if (partitions != null) {
+            partitions.start();
+        } else if (coordinatorPool != null) {
+            logger.log(Level.INFO, "Requests handled on the shared coordinator pool.");
+            pooledBatch = new Batch(batchSize);
+        } else {
+            Thread t = new Thread(this);
+            t.start();
+        }
         logger.log(Level.INFO, "Paying area activated.");
     }
 
@@ -234,17 +1236,70 @@ public class PlayArea implements Runnable {
      * @param player 
      */
     public void evictPlayer(Player player) {
-        registeredPlayers.remove(player);
-        player.getCell().setPlayer(null);
+        registry.evict(player.getId());
+        grid.clear(player.getCellIndex());
     }
-    
+
+    /**
+     * Takes the player out of the play for good, as when the client driving it
+     * goes away. The moves are stopped meanwhile, unless they are direct. The
+     * match is over once at most one player is left.
+     * @param player
+     */
+    public void removePlayer(Player player) {
+        boolean removed = false;
+        int[] locked = directMoves ? null : lockMoves();
+        try {
+            if (registry.evict(player.getId())) {
+                registry.setEvictionCount(player.getId(), 2);
+                grid.clear(player.getCellIndex());
+                removed = true;
+            }
+        } finally {
+            if (!directMoves) {
+                unlockMoves(locked);
+            }
+        }
+        if (removed && registry.getActiveCount() <= 1) {
+            finishAfterRemoval(player);
+        }
+        player.cleanup();
+    }
+
+    /**
+     * Ends the match after a removal left at most one player. Without a
+     * coordinator it is ended right away. Otherwise the coordinator is woken
+     * up with a request of the removed player, and ends the match after the
+     * batch as usual. A full channel does not take the request, nor needs it.
+     * @param player the player removed.
+     */
+    private void finishAfterRemoval(Player player) {
+        if (!activated || finished.get()) {
+            return;
+        }
+        if (directMoves || synchronousMoves) {
+            finishMatch();
+        } else if (partitions != null) {
+            partitions.offerMove(player, MovementDirection.TOP);
+        } else {
+            channel.offer(player, MovementDirection.TOP);
+            if (coordinatorPool != null) {
+                scheduleDrain();
+            }
+        }
+    }
+
     /**
      * Make the registered players to start making movement requests.
      */
     public void go(){
         logger.log(Level.INFO, "Initializing players.");
-        for (Player player : registeredPlayers) {
-            player.ready();
+        // In id order, so the first requests are scheduled the same way each time.
+        int bound = registry.getIdBound();
+        for (int id = 1; id < bound; id++) {
+            if (registry.isActive(id)) {
+                registry.getPlayer(id).ready();
+            }
         }
     }
 }
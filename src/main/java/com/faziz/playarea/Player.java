@@ -1,16 +1,19 @@
 package com.faziz.playarea;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import com.faziz.playarea.grid.Grid;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.commons.lang.math.RandomUtils;
 
 /**
  * A player makes the movement requests to the play area. Play area determines
  * if the move is foul one. If the player makes 2 fouls he is taken out of the 
  * play. 
  * 
+ * The position and the foul counts of the player are kept by the play area's
+ * <code>PlayerRegistry</code> under the player's id, the player is a handle
+ * on them.
+ * 
  * Player can be returned to the play if evicted from the play for the first time.
  * Subsequent eviction becomes permanent.
  * 
@@ -20,28 +23,25 @@ public class Player {
 
     private static final Logger logger = Logger.getLogger(Player.class.getName());
     /** Delay between each request in player's movement.*/
-    private static final long MOVEMENT_REQUEST_DELAY = 1000l;
+    static final long MOVEMENT_REQUEST_DELAY = 1000l;
     /** Delay in the call to the referee for reintroduction.*/
     private static final long REINTRODUCTION_REQUEST_DELAY = 1000l * 10;
-    /** 
-     * Foul flag count for the player. If the count is reaches 2, player will be
-     * permanently removed from the play.
-     */
-    private int flagCount = 0;
-    
-    /**
-     * Count of players eviction, 2 eviction and the player can not return to the game.
-     */
-    private int evictionCount = 0;
-    
-    /** Current cell of the player. */
-    private Cell cell = null;
+    /** Directions a player can move in, <code>values()</code> copies on each call.*/
+    private static final MovementDirection[] DIRECTIONS = MovementDirection.values();
     /** Playarea used to me movement request.*/
     private PlayArea playArea = null;
+    /** 
+     * State of the player: current cell, foul flag count and eviction count. 
+     * If the flag count reaches 2 the player is taken out of the play, after 2
+     * evictions the player can not return to the game.
+     */
+    private PlayerRegistry registry = null;
     /** Referee instance used to allow the user to return. */
     private Referee referee = null;
     /** Player name, used to identify each player in the play. */
     private String name = null;
+    /** Id of the player in the play area grid, assigned on first registration. */
+    private int id = 0;
     /**
      * Constructor to initialize the player.
      * @param playArea
@@ -49,44 +49,63 @@ public class Player {
      */
     public Player(PlayArea playArea, Referee referee, String name) {
         this.playArea = playArea;
+        this.registry = playArea.getRegistry();
         this.referee = referee;
         this.name = name;
+        this.movementTask = new MovementRequestTask(this, null);
+        this.requestReturnTask = new RequestReintoductionTask(this, referee);
     }
-    /** Timer used to move the player in the player area.*/
-    private Timer movementTimer = new Timer();
-    /** Timer used to request the referee to allow player's return.*/
-    private Timer requestReturnTimer = new Timer();
+    /** Movement request, scheduled again on the play area scheduler for each move.*/
+    private final MovementRequestTask movementTask;
+    /** Request to the referee to allow player's return.*/
+    private final RequestReintoductionTask requestReturnTask;
+    /** Thread running the player loop, in <code>PlayerRuntime.THREAD</code>.*/
+    private volatile Thread loopThread = null;
+    /** Set by the player loop on a request, cleared once the play area answers.*/
+    private volatile boolean awaitingVerdict = false;
+    /** Set on cleanup to end the player loop.*/
+    private volatile boolean stopped = false;
 
     /** 
      * Called by the referee. Increases the number fouls committed by the player.
      */
     public void flag() {
-        flagCount++;
-        if( flagCount > 1 )
+        int flagCount = registry.getFlagCount(id) + 1;
+        registry.setFlagCount(id, flagCount);
+        int evictionCount = registry.getEvictionCount(id);
+        if( flagCount > 1 ) {
             evictionCount++;
+            registry.setEvictionCount(id, evictionCount);
+        }
 
-        logger.log(Level.INFO, "Flagging player-> flag count {0}", flagCount);
-        logger.log(Level.INFO, "Flagging player-> eviction count {0}", evictionCount);
-        if (evictionCount < 2) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Flagging player-> flag count {0}", flagCount);
+            logger.log(Level.FINE, "Flagging player-> eviction count {0}", evictionCount);
+        }
+        if (isPlayerToBeRemoved() && evictionCount < 2) {
             requestRefereeForReintroduction();
         }
     }    
     
     public void cleanup(){
-        requestReturnTimer.cancel();
-        movementTimer.cancel();
+        playArea.getScheduler().cancel(requestReturnTask);
+        playArea.getScheduler().cancel(movementTask);
+        stopped = true;
+        Thread thread = loopThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
     }
 
     /**
-     * 
+     * Asks the referee to return the player to the play, after a delay.
      */
-    private final void requestRefereeForReintroduction() {
-        requestReturnTimer.schedule(new RequestReintoductionTimer(this, referee),
-                REINTRODUCTION_REQUEST_DELAY);
+    final void requestRefereeForReintroduction() {
+        playArea.getScheduler().schedule(requestReturnTask, REINTRODUCTION_REQUEST_DELAY);
     }
 
     public boolean isPlayerToBeRemoved() {
-        if (flagCount == 2 || evictionCount > 1) {
+        if (registry.getFlagCount(id) == 2 || registry.getEvictionCount(id) > 1) {
             return true;
         } else {
             return false;
@@ -95,25 +114,43 @@ public class Player {
 
     /** Initializes the movement requests. Called by the playarea and referee. */
     private void getSet() {
-        MovementDirection movementDirection = getMovementDirection();        
-        movementTimer.schedule(
-                new MovementRequestTimer(this, movementDirection),
-                MOVEMENT_REQUEST_DELAY);
+        movementTask.setDirection(getMovementDirection());
+        playArea.getScheduler().schedule(movementTask, MOVEMENT_REQUEST_DELAY);
     }
 
     /**
      * Initializes the player to make the request.
      */
     public void ready() {
-        logger.log(Level.INFO, "Initializing player: {0}.", this);
-        getSet();
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Initializing player: {0}.", this);
+        }
+        if (playArea.getPlayerRuntime() == PlayerRuntime.TIMER) {
+            getSet();
+        } else if (playArea.getPlayerRuntime() == PlayerRuntime.EXTERNAL) {
+            return;
+        } else if (loopThread == null) {
+            startLoop();
+        } else {
+            awaitingVerdict = false;
+            LockSupport.unpark(loopThread);
+        }
+    }
+
+    /** Starts the player loop, the first time the player is readied. */
+    private synchronized void startLoop() {
+        if (loopThread == null) {
+            Thread thread = playArea.getPlayerThreadFactory().newThread(new PlayerLoop());
+            loopThread = thread;
+            thread.start();
+        }
     }
 
     /**
      * Called by the playarea to notify that the move has been made.
      */
     public void moveAccepted() {
-        logger.log(Level.INFO, "Player:{0} move accepted.", new Object[]{this});
+        logger.log(Level.FINE, "Player:{0} move accepted.", this);
         ready();
     }
 
@@ -122,8 +159,10 @@ public class Player {
      * @param direction 
      */
     public void rejectMoveRequest(MovementDirection direction) {
-        logger.log(Level.INFO, "Player:{0} move in direction: {1} rejected.", 
-            new Object[]{this, direction});
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Player:{0} move in direction: {1} rejected.", 
+                new Object[]{this, direction});
+        }
         ready();
     }
 
@@ -131,22 +170,64 @@ public class Player {
      * @param cell the cell to set
      */
     public void setCell(Cell cell) {
-        this.cell = cell;
+        setCellIndex((cell == null) ? Grid.NO_CELL : cell.getIndex());
     }
 
     /**
+     * Returns a view of the current cell, creating it on each call. The play 
+     * area and referee work on <code>getCellIndex()</code> instead.
      * @return the cell
      */
     public Cell getCell() {
-        return cell;
+        long cellIndex = getCellIndex();
+        return (cellIndex == Grid.NO_CELL) ? null : playArea.getCell(cellIndex);
+    }
+
+    /**
+     * @return the cellIndex, <code>Grid.NO_CELL</code> before the first 
+     * registration.
+     */
+    public long getCellIndex() {
+        return registry.getCell(id);
+    }
+
+    /**
+     * @param cellIndex the cellIndex to set
+     */
+    void setCellIndex(long cellIndex) {
+        if (id == Grid.EMPTY) {
+            throw new IllegalStateException("Player has no id yet, register it first.");
+        }
+        registry.setCell(id, cellIndex);
     }
 
-    class MovementRequestTimer extends TimerTask {
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
 
-        private MovementDirection direction = null;
+    /**
+     * @return the id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @param id the id to set
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
+    class MovementRequestTask extends ScheduledTask {
+
+        private volatile MovementDirection direction = null;
         private Player player = null;
 
-        public MovementRequestTimer(Player player, MovementDirection direction) {
+        public MovementRequestTask(Player player, MovementDirection direction) {
             this.player = player;
             this.direction = direction;
         }
@@ -171,67 +252,106 @@ public class Player {
         }
     }
 
-    class RequestReintoductionTimer extends TimerTask {
+    /**
+     * Player driven by its own thread, makes a request, then waits for the play 
+     * area to accept or reject it before sleeping until the next one.
+     */
+    class PlayerLoop implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (!stopped) {
+                    Thread.sleep(MOVEMENT_REQUEST_DELAY);
+                    awaitingVerdict = true;
+                    playArea.requestMove(Player.this, getMovementDirection());
+                    while (awaitingVerdict && !stopped) {
+                        LockSupport.park(Player.this);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                logger.log(Level.INFO, "Player:{0} loop interrupted.", Player.this);
+            }
+        }
+    }
+
+    class RequestReintoductionTask extends ScheduledTask {
 
         Referee referee = null;
         Player player = null;
 
-        public RequestReintoductionTimer(Player player, Referee referee) {
+        public RequestReintoductionTask(Player player, Referee referee) {
             this.player = player;
             this.referee = referee;
         }
 
         @Override
         public void run() {
+            registry.setFlagCount(id, 0);
             referee.requestReturnToPlay(player);
-            flagCount = 0;
         }
     }
 
     /** 
      * Determines player's direction, randomly, 
-     * relative to its current location.
-     */
-    private final MovementDirection getMovementDirection() {
-        int numberOfDirections = MovementDirection.values().length;
-        int randomDirection;
-
-        if (cell.isTopLeft()) {
-            randomDirection = generateRandomeExcluding(numberOfDirections, 0, 1);
-        } else if (cell.isTopRight()) {
-            randomDirection = generateRandomeExcluding(numberOfDirections, 1, 2);
-        } else if (cell.isBottomLeft()) {
-            randomDirection = generateRandomeExcluding(numberOfDirections, 0, 3);
-        } else if (cell.isBottomRight()) {
-            randomDirection = generateRandomeExcluding(numberOfDirections, 2, 3);
-        } else if (cell.isLeftEdge()) {
-            randomDirection = generateRandomeExcluding(numberOfDirections, 0);
-        } else if (cell.isTopEdge()) {
-            randomDirection = generateRandomeExcluding(numberOfDirections, 1);
-        } else if (cell.isRightEdge()) {
-            randomDirection = generateRandomeExcluding(numberOfDirections, 2);
-        } else if (cell.isBottomEdge()) {
-            randomDirection = generateRandomeExcluding(numberOfDirections, 3);
-        } else {
-            randomDirection = generateRandomeExcluding(numberOfDirections);
+     * relative to its current location. Directions leading off the play area,
+     * on the edges and in the corners, are left out.
+     */
+    public final MovementDirection getMovementDirection() {
+        return DIRECTIONS[generateRandomeExcluding(DIRECTIONS.length, excludedDirections())];
+    }
+
+    /**
+     * Same as <code>getMovementDirection()</code>, but picks with the given 
+     * random bits instead of the play area's random source. For choosing the
+     * directions of many players in parallel, repeatably.
+     * @param random
+     * @return 
+     */
+    final MovementDirection getMovementDirection(int random) {
+        int excluded = excludedDirections();
+        int allowed = DIRECTIONS.length - Integer.bitCount(excluded);
+        if (allowed == 0) {
+            return DIRECTIONS[(random & Integer.MAX_VALUE) % DIRECTIONS.length];
+        }
+        int n = (random & Integer.MAX_VALUE) % allowed;
+        for (int i = 0; ; i++) {
+            if ((excluded & (1 << i)) == 0 && n-- == 0) {
+                return DIRECTIONS[i];
+            }
+        }
+    }
+
+    /**
+     * @return bit mask of the directions leading off the play area.
+     */
+    private int excludedDirections() {
+        Grid grid = playArea.getGrid();
+        long cellIndex = getCellIndex();
+        int excluded = 0;
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            if (grid.neighbour(cellIndex, DIRECTIONS[i]) == Grid.NO_CELL) {
+                excluded |= 1 << i;
+            }
         }
-        
-        return MovementDirection.values()[randomDirection];
+        return excluded;
     }
 
     /**
-     * WARNING: NOT VERY PRETTY BUT EFFECTIVE FOR NOW.
+     * Picks a random number below max, skipping the numbers whose bit is set
+     * in the exclude mask. If everything is excluded any number is returned.
      * @param max
      * @param exclude
      * @return 
      */
-    private final int generateRandomeExcluding(int max, int... exclude) {
-        int n = RandomUtils.nextInt(max);
-        for (int i : exclude) {
-            if (i == n) {
-                return generateRandomeExcluding(max, exclude);
-            }
+    private final int generateRandomeExcluding(int max, int exclude) {
+        if (exclude == (1 << max) - 1) {
+            return playArea.getRandom().nextInt(max);
         }
+        int n;
+        do {
+            n = playArea.getRandom().nextInt(max);
+        } while ((exclude & (1 << n)) != 0);
 
         return n;
     }
@@ -0,0 +1,299 @@
+package com.faziz.playarea;
+
+import com.faziz.playarea.grid.Grid;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * State of all the players of a play area, kept in parallel primitive arrays
+ * indexed by player id. The <code>Player</code> objects are handles on it.
+ *
+ * The arrays are split in pages of <code>PAGE_SIZE</code> players. Adding
+ * players only adds pages, the pages themselves never move, so a write to a
+ * player's state can never be lost to a copy made by a concurrent growth.
+ * Passes over all the players walk the pages in id order.
+ *
+ * Players are added and their status changed under the registry's lock. The
+ * positions and counts are written without it, each by the thread judging the
+ * player's moves, as they were on the player objects before.
+ *
+ * @author faziz
+ */
+public class PlayerRegistry {
+
+    /** Added but never in the play. */
+    public static final byte NEW = 0;
+    /** In the play. */
+    public static final byte ACTIVE = 1;
+    /** Taken out of the play. */
+    public static final byte EVICTED = 2;
+
+    /** Players per page, a power of two. */
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /** Grows by whole pages, replaced rather than changed in place. */
+    private volatile Page[] pages = new Page[]{new Page()};
+    /** Id handed out to the next player added, 0 marks an empty cell. */
+    private volatile int nextId = 1;
+    /**
+     * Players in the play. Written after every status change, so reading it
+     * first makes the status read after it current.
+     */
+    private volatile int activeCount = 0;
+    /** Players taken out of the play, whether they will return or not. */
+    private volatile int evictedCount = 0;
+    /** Whether the pages have the request times, only needed for the metrics. */
+    private boolean requestTimesKept = false;
+
+    /**
+     * Hands out the next id to the player.
+     * @param player
+     * @return the id.
+     */
+    public synchronized int add(Player player) {
+        int id = nextId;
+        if ((id >>> PAGE_SHIFT) == pages.length) {
+            Page[] grown = Arrays.copyOf(pages, pages.length + 1);
+            grown[pages.length] = new Page();
+            if (requestTimesKept) {
+                grown[pages.length].requestTimes = new long[PAGE_SIZE];
+            }
+            pages = grown;
+        }
+        Page page = page(id);
+        page.players[id & PAGE_MASK] = player;
+        page.cells[id & PAGE_MASK] = Grid.NO_CELL;
+        nextId = id + 1;
+        return id;
+    }
+
+    /**
+     * Puts the player in the play.
+     * @param id
+     * @return false if it already was.
+     */
+    public synchronized boolean activate(int id) {
+        Page page = page(id);
+        if (page.status[id & PAGE_MASK] == ACTIVE) {
+            return false;
+        }
+        if (page.status[id & PAGE_MASK] == EVICTED) {
+            evictedCount--;
+        }
+        page.status[id & PAGE_MASK] = ACTIVE;
+        activeCount++;
+        return true;
+    }
+
+    /**
+     * Takes the player out of the play.
+     * @param id
+     * @return false if it was not in the play.
+     */
+    public synchronized boolean evict(int id) {
+        Page page = page(id);
+        if (page.status[id & PAGE_MASK] != ACTIVE) {
+            return false;
+        }
+        page.status[id & PAGE_MASK] = EVICTED;
+        evictedCount++;
+        activeCount--;
+        return true;
+    }
+
+    /**
+     * @param id
+     * @return true if the player is in the play, false for id 0.
+     */
+    public boolean isActive(int id) {
+        if (activeCount == 0 || id <= Grid.EMPTY || id >= nextId) {
+            return false;
+        }
+        return page(id).status[id & PAGE_MASK] == ACTIVE;
+    }
+
+    public byte getStatus(int id) {
+        return page(id).status[id & PAGE_MASK];
+    }
+
+    /**
+     * @return number of players in the play.
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * @return number of players out of the play after an eviction.
+     */
+    public int getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * @return the player in the play with the lowest id, null if none.
+     */
+    public Player firstActive() {
+        int bound = nextId;
+        for (int id = 1; id < bound; id++) {
+            if (isActive(id)) {
+                return getPlayer(id);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return bound of the ids handed out, ids run from 1 to below it.
+     */
+    public int getIdBound() {
+        return nextId;
+    }
+
+    /**
+     * @param id
+     * @return the player, null for id 0.
+     */
+    public Player getPlayer(int id) {
+        return (id == Grid.EMPTY) ? null : page(id).players[id & PAGE_MASK];
+    }
+
+    /**
+     * @param id
+     * @return grid index of the player's cell, <code>Grid.NO_CELL</code> for id 0.
+     */
+    public long getCell(int id) {
+        return (id == Grid.EMPTY) ? Grid.NO_CELL : page(id).cells[id & PAGE_MASK];
+    }
+
+    void setCell(int id, long index) {
+        page(id).cells[id & PAGE_MASK] = index;
+    }
+
+    public int getFlagCount(int id) {
+        return (id == Grid.EMPTY) ? 0 : page(id).flagCounts[id & PAGE_MASK];
+    }
+
+    void setFlagCount(int id, int flagCount) {
+        page(id).flagCounts[id & PAGE_MASK] = flagCount;
+    }
+
+    public int getEvictionCount(int id) {
+        return (id == Grid.EMPTY) ? 0 : page(id).evictionCounts[id & PAGE_MASK];
+    }
+
+    void setEvictionCount(int id, int evictionCount) {
+        page(id).evictionCounts[id & PAGE_MASK] = evictionCount;
+    }
+
+    /**
+     * Writes the state of the ids below the bound into the buffer, one column
+     * after the other: cells, flag counts, eviction counts and status, slot 0
+     * included. A page at a time, so it runs at the speed of a memory copy.
+     * @param buffer
+     * @param bound
+     */
+    void write(ByteBuffer buffer, int bound) {
+        Page[] current = pages;
+        int pageCount = ((bound - 1) >>> PAGE_SHIFT) + 1;
+        LongBuffer cells = buffer.asLongBuffer();
+        for (int i = 0; i < pageCount; i++) {
+            cells.put(current[i].cells, 0, Math.min(PAGE_SIZE, bound - (i << PAGE_SHIFT)));
+        }
+        buffer.position(buffer.position() + bound * 8);
+        IntBuffer flagCounts = buffer.asIntBuffer();
+        for (int i = 0; i < pageCount; i++) {
+            flagCounts.put(current[i].flagCounts, 0, Math.min(PAGE_SIZE, bound - (i << PAGE_SHIFT)));
+        }
+        buffer.position(buffer.position() + bound * 4);
+        IntBuffer evictionCounts = buffer.asIntBuffer();
+        for (int i = 0; i < pageCount; i++) {
+            evictionCounts.put(current[i].evictionCounts, 0, 
+                Math.min(PAGE_SIZE, bound - (i << PAGE_SHIFT)));
+        }
+        buffer.position(buffer.position() + bound * 4);
+        for (int i = 0; i < pageCount; i++) {
+            buffer.put(current[i].status, 0, Math.min(PAGE_SIZE, bound - (i << PAGE_SHIFT)));
+        }
+    }
+
+    /**
+     * @param id
+     * @return nano time of the player's pending request, 0 if none.
+     */
+    long getRequestTime(int id) {
+        long[] requestTimes = page(id).requestTimes;
+        return (requestTimes != null) ? requestTimes[id & PAGE_MASK] : 0;
+    }
+
+    void setRequestTime(int id, long nanos) {
+        long[] requestTimes = page(id).requestTimes;
+        if (requestTimes != null) {
+            requestTimes[id & PAGE_MASK] = nanos;
+        }
+    }
+
+    /**
+     * Adds the request times to the pages, and to the pages added later on.
+     */
+    synchronized void keepRequestTimes() {
+        if (requestTimesKept) {
+            return;
+        }
+        requestTimesKept = true;
+        Page[] current = pages;
+        for (Page page : current) {
+            page.requestTimes = new long[PAGE_SIZE];
+        }
+        // Published to the threads reading the pages from now on.
+        pages = current;
+    }
+
+    /**
+     * @param id
+     * @return the asynchronous requests of the player, null if it never made any.
+     */
+    PlayArea.PendingMoves getPendingMoves(int id) {
+        return page(id).pendingMoves.get(id & PAGE_MASK);
+    }
+
+    /**
+     * @param id
+     * @return the asynchronous requests of the player, added on first use.
+     */
+    PlayArea.PendingMoves pendingMoves(int id) {
+        AtomicReferenceArray<PlayArea.PendingMoves> moves = page(id).pendingMoves;
+        PlayArea.PendingMoves pending = moves.get(id & PAGE_MASK);
+        if (pending == null) {
+            moves.compareAndSet(id & PAGE_MASK, null, new PlayArea.PendingMoves());
+            pending = moves.get(id & PAGE_MASK);
+        }
+        return pending;
+    }
+
+    private Page page(int id) {
+        return pages[id >>> PAGE_SHIFT];
+    }
+
+    /**
+     * State of <code>PAGE_SIZE</code> consecutive player ids.
+     */
+    private static class Page {
+
+        final Player[] players = new Player[PAGE_SIZE];
+        final long[] cells = new long[PAGE_SIZE];
+        final int[] flagCounts = new int[PAGE_SIZE];
+        final int[] evictionCounts = new int[PAGE_SIZE];
+        final byte[] status = new byte[PAGE_SIZE];
+        /** Only kept once the play area has metrics, null until then. */
+        long[] requestTimes;
+        /** Asynchronous requests of the players making any. */
+        final AtomicReferenceArray<PlayArea.PendingMoves> pendingMoves =
+            new AtomicReferenceArray<PlayArea.PendingMoves>(PAGE_SIZE);
+    }
+}
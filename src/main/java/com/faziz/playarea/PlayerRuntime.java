@@ -0,0 +1,27 @@
+package com.faziz.playarea;
+
+/**
+ * How players are driven to make their movement requests.
+ *
+ * @author faziz
+ */
+public enum PlayerRuntime {
+
+    /** 
+     * Each movement request is a delayed task on the shared player scheduler,
+     * the next one is scheduled when the play area answers the previous one.
+     */
+    TIMER,
+    /** 
+     * Each player runs its own loop on a thread of its own, sleeping between
+     * requests and waiting for the play area's answer. Uses virtual threads 
+     * where the JVM has them.
+     */
+    THREAD,
+    /**
+     * Players are driven from outside, whoever calls <code>requestMove</code>
+     * decides when the next request is made. The play area only tells the player
+     * about the outcome.
+     */
+    EXTERNAL
+}
@@ -0,0 +1,32 @@
+package com.faziz.playarea;
+
+/**
+ * Runs the delayed player actions, movement requests and requests for
+ * reintroduction, for all the players of a play area.
+ *
+ * <code>TimingWheelScheduler</code> runs them on wall clock time, 
+ * <code>VirtualTimeScheduler</code> as a simulation on a virtual clock.
+ *
+ * @author faziz
+ */
+public interface PlayerScheduler {
+
+    /**
+     * Runs the task once after the delay. A task already scheduled is moved to
+     * the new deadline.
+     * @param task
+     * @param delay delay in milliseconds.
+     */
+    void schedule(ScheduledTask task, long delay);
+
+    /**
+     * Cancels the task if it has not started running yet.
+     * @param task
+     */
+    void cancel(ScheduledTask task);
+
+    /**
+     * Stops the scheduler, pending actions are dropped.
+     */
+    void shutdown();
+}
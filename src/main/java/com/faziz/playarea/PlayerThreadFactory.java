@@ -0,0 +1,70 @@
+package com.faziz.playarea;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates the threads running the player loops in <code>PlayerRuntime.THREAD</code>.
+ *
+ * Virtual threads are used when the JVM offers them, they are looked up 
+ * reflectively since the project is compiled for older JVMs. Otherwise it falls
+ * back to daemon platform threads with a small stack.
+ *
+ * @author faziz
+ */
+public class PlayerThreadFactory implements ThreadFactory {
+
+    private static final Logger logger = Logger.getLogger(PlayerThreadFactory.class.getName());
+    /** Stack size of the platform threads, the player loop is shallow. */
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+
+    /** Factory of the JVM creating virtual threads, null if there are none. */
+    private final ThreadFactory virtualThreadFactory;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public PlayerThreadFactory() {
+        virtualThreadFactory = lookupVirtualThreadFactory();
+        if (virtualThreadFactory != null) {
+            logger.info("Players run on virtual threads.");
+        } else {
+            logger.info("Virtual threads not available, players run on platform threads.");
+        }
+    }
+
+    public Thread newThread(Runnable runnable) {
+        if (virtualThreadFactory != null) {
+            return virtualThreadFactory.newThread(runnable);
+        }
+        Thread thread = new Thread(null, runnable, "player-" + count.incrementAndGet(), 
+            PLATFORM_STACK_SIZE);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * @return true if the players run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtualThreadFactory != null;
+    }
+
+    /**
+     * <code>Thread.ofVirtual().name("player-", 1).factory()</code>, if the JVM
+     * has it.
+     */
+    private static ThreadFactory lookupVirtualThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, "player-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception ex) {
+            logger.log(Level.FINE, "No virtual threads.", ex);
+            return null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.faziz.playarea;
 
+import com.faziz.playarea.grid.Grid;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,7 +16,12 @@ public class Referee {
     /** Singleton instance of the referee.*/
     private static Referee REFEREE = null;
 
-    private Referee(PlayArea playArea) {
+    /**
+     * Creates a referee of its own for the play area, apart from the one of
+     * <code>getInstance</code>.
+     * @param playArea
+     */
+    public Referee(PlayArea playArea) {
         this.playArea = playArea;
     }
 
@@ -31,57 +37,22 @@ public class Referee {
      * any direction.
      */
     public boolean moveIsFouled(Player player, MovementDirection direction) {
-        logger.log(Level.INFO, "Testing if move is fouled for player: "
-                + "{0} to direction: {1}.", new Object[]{player, direction});
-        boolean isFouled = false;
-        
-        Cell cellInDirection = player.getCell().getCellInDirection(direction);
-        logger.log(Level.INFO, "Player cell: {0}", player.getCell());
-        logger.log(Level.INFO, "Player cellInDirection: {0}", cellInDirection);
-        
-        if (areAdjacentCellsOccupied(cellInDirection)) {
-            isFouled = true;
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Testing if move is fouled for player: "
+                    + "{0} to direction: {1}.", new Object[]{player, direction});
         }
-
-        logger.log(Level.INFO, "isFouled: {0}", isFouled);
-        return isFouled;
-    }
-
-    /**
-     * Checks if the adjacent cells of the this cell are occupied by player.
-     * @param cell
-     * @return 
-     */
-    private final boolean areAdjacentCellsOccupied(Cell cell) {
-        if(isAdjacentCellsOccupied(cell.getLeftCell())){
-            return true;
-        }else if(isAdjacentCellsOccupied(cell.getTopCell())){
-            return true;
-        }else if(isAdjacentCellsOccupied(cell.getRightCell())){
-            return true;
-        }else if(isAdjacentCellsOccupied(cell.getBottomCell())){
-            return true;
-        }else{
+        Grid grid = playArea.getGrid();
+        long playerIndex = player.getCellIndex();
+        long indexInDirection = grid.neighbour(playerIndex, direction);
+        if (indexInDirection == Grid.NO_CELL) {
+            // Off the board, rejected rather than fouled.
             return false;
         }
-    }
+        
+        boolean isFouled = grid.isNeighbourOccupied(indexInDirection, playerIndex);
 
-    /**
-     * Checks if the cell is occupied by the player.
-     * @param cell
-     * @return 
-     */
-    private final boolean isAdjacentCellsOccupied(Cell cell) {
-        logger.log(Level.INFO, "isAdjacentCellsOccupied: {0}", cell);
-        boolean isAdjacent = false;
-        if( cell != null){
-            if( null == cell.getPlayer()){
-                isAdjacent = true;
-            }else{
-                isAdjacent = false;
-            }
-        }
-        return isAdjacent;
+        logger.log(Level.FINE, "isFouled: {0}", isFouled);
+        return isFouled;
     }
 
     /**
@@ -91,22 +62,17 @@ public class Referee {
      * @return 
      */
     public boolean moveIsAllowed(Player player, MovementDirection direction) {
-        logger.info("Testing if the move is allowed.");
+        logger.fine("Testing if the move is allowed.");
         
-        boolean isAllowed = false;
-        Cell playerCell = player.getCell();
-        logger.log(Level.INFO, "Player cell: {0}", playerCell);
-
-        Cell cellInDirection = playerCell.getCellInDirection(direction);
-        logger.log(Level.INFO, "Player cellInDirection: {0}", cellInDirection);
+        Grid grid = playArea.getGrid();
+        long indexInDirection = grid.neighbour(player.getCellIndex(), direction);
         
-        if (cellInDirection == null) {
-            isAllowed = false;
-        } else if (cellInDirection.isEmpty()) {
-            isAllowed = true;
+        boolean isAllowed = false;
+        if (indexInDirection != Grid.NO_CELL) {
+            isAllowed = !grid.isOccupied(indexInDirection);
         }
 
-        logger.log(Level.INFO, "cell is allowed: {0}", isAllowed);
+        logger.log(Level.FINE, "cell is allowed: {0}", isAllowed);
         return isAllowed;
     }
 
@@ -0,0 +1,174 @@
+package com.faziz.playarea;
+
+import com.faziz.playarea.journal.MoveJournal;
+import com.faziz.playarea.journal.MoveJournalReader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plays a recorded match again from its <code>MoveJournal</code>, on the
+ * calling thread, with no timers and no players of its own.
+ *
+ * Every placement is made again on the recorded cell, every move judged again
+ * by the referee and applied by the play area, and the outcome compared with
+ * the recorded one. Any difference is counted as a mismatch. As the moves are
+ * judged one by one, journals of the coordinator and of simulations replay
+ * exactly, those of direct moves, tiles or ticks may not.
+ *
+ * Run against a journal recorded before a change to the grid or the referee,
+ * the mismatches show where the change plays differently. With nothing else to
+ * do between the moves it also measures the rule engine alone.
+ *
+ * @author faziz
+ */
+public class ReplayEngine {
+
+    private static final Logger logger = Logger.getLogger(ReplayEngine.class.getName());
+    private static final MovementDirection[] DIRECTIONS = MovementDirection.values();
+    private static final MoveVerdict[] VERDICTS = MoveVerdict.values();
+    /** Mismatches logged one by one, the rest are only counted. */
+    private static final int LOGGED_MISMATCHES = 10;
+
+    private final PlayArea playArea;
+    private final Referee referee;
+    private final PlayerRegistry registry;
+    private long recordCount = 0;
+    private long moveCount = 0;
+    private long mismatchCount = 0;
+    /** Wall clock spent replaying, in nanoseconds. */
+    private long replayNanos = 0;
+
+    /**
+     * @param playArea play area of the recorded size, with no players yet, on
+     * a <code>VirtualTimeScheduler</code> that is never run.
+     * @param referee
+     */
+    public ReplayEngine(PlayArea playArea, Referee referee) {
+        if (!(playArea.getScheduler() instanceof VirtualTimeScheduler)) {
+            throw new IllegalStateException("Replays need a virtual time scheduler.");
+        }
+        if (playArea.getRegistry().getIdBound() != 1) {
+            throw new IllegalStateException("Play area has players already.");
+        }
+        this.playArea = playArea;
+        this.referee = referee;
+        this.registry = playArea.getRegistry();
+    }
+
+    /**
+     * Replays the records of the journal, from where the reader is.
+     * @param reader
+     */
+    public void replay(MoveJournalReader reader) {
+        long start = System.nanoTime();
+        while (reader.next()) {
+            recordCount++;
+            if (reader.getType() == MoveJournal.PLACED) {
+                place(reader);
+            } else {
+                move(reader);
+            }
+        }
+        replayNanos += System.nanoTime() - start;
+    }
+
+    private void place(MoveJournalReader reader) {
+        int id = reader.getPlayerId();
+        Player player = player(id);
+        if (registry.getStatus(id) == PlayerRegistry.EVICTED) {
+            // Returning to the play, as the reintroduction task does.
+            registry.setFlagCount(id, 0);
+        }
+        if (!playArea.registerPlayerAt(player, reader.getTo())) {
+            mismatch(reader, "cell " + reader.getTo() + " taken");
+        }
+    }
+
+    private void move(MoveJournalReader reader) {
+        int id = reader.getPlayerId();
+        Player player = player(id);
+        if (registry.isActive(id) && player.getCellIndex() != reader.getFrom()) {
+            mismatch(reader, "in cell " + player.getCellIndex() + ", not " + reader.getFrom());
+        }
+        MoveVerdict verdict = playArea.processMove(player, DIRECTIONS[reader.getDirection()]);
+        moveCount++;
+        if (verdict.ordinal() != reader.getVerdict()) {
+            mismatch(reader, verdict + ", not " + VERDICTS[reader.getVerdict()]);
+        }
+    }
+
+    /**
+     * @return the player with the id, adding players up to it if need be.
+     */
+    private Player player(int id) {
+        while (registry.getIdBound() <= id) {
+            Player player = new Player(playArea, referee, "Jhon" + (registry.getIdBound() - 1));
+            player.setId(registry.add(player));
+        }
+        return registry.getPlayer(id);
+    }
+
+    private void mismatch(MoveJournalReader reader, String message) {
+        if (mismatchCount++ < LOGGED_MISMATCHES) {
+            logger.log(Level.WARNING, "Record {0}, player {1}: {2}.",
+                new Object[]{reader.getPosition(), reader.getPlayerId(), message});
+        }
+    }
+
+    /**
+     * Compares the players with a snapshot taken at the end of the recorded
+     * match: status, counts, and cell of the players in the play.
+     * @param snapshot
+     * @return number of players that differ.
+     */
+    public int verify(MatchSnapshot snapshot) {
+        int differences = 0;
+        int bound = Math.max(snapshot.getIdBound(), registry.getIdBound());
+        for (int id = 1; id < bound; id++) {
+            if (id >= snapshot.getIdBound() || id >= registry.getIdBound()) {
+                differences++;
+                continue;
+            }
+            byte status = registry.getStatus(id);
+            if (status != snapshot.getStatus(id)
+                    || registry.getFlagCount(id) != snapshot.getFlagCount(id)
+                    || registry.getEvictionCount(id) != snapshot.getEvictionCount(id)
+                    || (status == PlayerRegistry.ACTIVE
+                        && registry.getCell(id) != snapshot.getCell(id))) {
+                if (differences < LOGGED_MISMATCHES) {
+                    logger.log(Level.WARNING, "Player {0} differs from the snapshot.", id);
+                }
+                differences++;
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * @return number of records replayed.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return number of moves judged.
+     */
+    public long getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @return number of records played differently than recorded.
+     */
+    public long getMismatchCount() {
+        return mismatchCount;
+    }
+
+    /**
+     * @return moves judged per second of wall clock.
+     */
+    public double getMovesPerSecond() {
+        return replayNanos == 0 ? 0 : moveCount * 1e9 / replayNanos;
+    }
+}
@@ -0,0 +1,33 @@
+package com.faziz.playarea;
+
+/**
+ * Action run once by the <code>PlayerScheduler</code> after a delay.
+ *
+ * Tasks are meant to be reused, a player keeps one instance per kind of action
+ * and schedules it again and again, so scheduling does not allocate. The fields
+ * below link the task into the scheduler and are only touched by it.
+ *
+ * @author faziz
+ */
+public abstract class ScheduledTask implements Runnable {
+
+    /** Not scheduled. */
+    static final int IDLE = 0;
+    /** Waiting in a bucket of the timing wheel. */
+    static final int SCHEDULED = 1;
+    /** Taken out of the wheel, about to run. */
+    static final int EXPIRED = 2;
+
+    /** Wheel the task is scheduled on, fixed once the task is first scheduled. */
+    volatile TimingWheelScheduler.Wheel wheel = null;
+    int state = IDLE;
+    /** Tick of the wheel, or virtual millisecond, at which the task is due. */
+    long deadlineTick = 0;
+    /** Neighbours in the bucket list. */
+    ScheduledTask previous = null;
+    ScheduledTask next = null;
+    /** Order of scheduling, breaks ties between tasks due at the same time. */
+    long sequence = 0;
+    /** Position in the heap of the <code>VirtualTimeScheduler</code>, -1 if not in it. */
+    int heapIndex = -1;
+}
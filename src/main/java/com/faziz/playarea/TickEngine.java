@@ -0,0 +1,270 @@
+package com.faziz.playarea;
+
+import com.faziz.playarea.grid.Grid;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves all the players in lock step, one tick at a time, in place of the
+ * request queue and the coordinator loop.
+ *
+ * Each tick runs as a pipeline over the players, by id:
+ * <ol>
+ * <li>Propose, in parallel: every player in the play picks a direction. The
+ * random bits come from the seed, the tick and the player id, so the choice does
+ * not depend on the thread making it.</li>
+ * <li>Resolve, in parallel: a proposal is rejected if it leads off the grid or
+ * into an occupied cell. Players proposing the same cell are resolved in favour
+ * of the lowest id, which each player can tell on its own by looking at the
+ * proposals of the players around the cell. The foul check is made here too.
+ * Both only read the grid as it was at the start of the tick.</li>
+ * <li>Apply, in id order: fouls are flagged, evictions made and the winning
+ * moves carried out. Every target was empty and is won by one player only, so
+ * the moves cannot collide.</li>
+ * </ol>
+ * A tick stands for one movement request delay. Between ticks the clock of the
+ * <code>VirtualTimeScheduler</code> moves on by as much, so the referee's
+ * reintroductions happen on the same thread, between two ticks.
+ *
+ * @author faziz
+ */
+public class TickEngine {
+
+    private static final Logger logger = Logger.getLogger(TickEngine.class.getName());
+    private static final MovementDirection[] DIRECTIONS = MovementDirection.values();
+    /** Players per fork/join leaf task. */
+    private static final int THRESHOLD = 1024;
+    /** Virtual time per tick in milliseconds. */
+    public static final long TICK_MILLIS = Player.MOVEMENT_REQUEST_DELAY;
+
+    /** Proposal of a player that is out of the play or has none. */
+    private static final byte NONE = -1;
+    /** Outcomes of the resolve phase. */
+    private static final byte REJECTED = 0;
+    private static final byte MOVED = 1;
+    private static final byte FOULED = 2;
+
+    private final PlayArea playArea;
+    private final Referee referee;
+    private final VirtualTimeScheduler scheduler;
+    private final ForkJoinPool pool;
+    private final long seed;
+    /** Direction ordinal proposed by each player id, <code>NONE</code> if none. */
+    private byte[] proposals = new byte[0];
+    /** Outcome for each player id with a proposal. */
+    private byte[] outcomes = new byte[0];
+    /** Players by id for the current tick, null if out of the play. */
+    private Player[] players = new Player[0];
+    private int idBound = 0;
+    private long tickCount = 0;
+    /** Wall clock spent in ticks, in nanoseconds. */
+    private long tickNanos = 0;
+
+    /**
+     * @param playArea play area on a <code>VirtualTimeScheduler</code>.
+     * @param referee
+     * @param pool pool running the parallel phases.
+     * @param seed seed of the players' directions.
+     */
+    public TickEngine(PlayArea playArea, Referee referee, ForkJoinPool pool, long seed) {
+        if (!(playArea.getScheduler() instanceof VirtualTimeScheduler)) {
+            throw new IllegalStateException("Ticks need a virtual time scheduler.");
+        }
+        this.playArea = playArea;
+        this.referee = referee;
+        this.scheduler = (VirtualTimeScheduler) playArea.getScheduler();
+        this.pool = pool;
+        this.seed = seed;
+    }
+
+    /**
+     * Runs ticks until the match is over or the tick limit is reached.
+     * @param maxTicks
+     * @return true if the match is over.
+     */
+    public boolean run(long maxTicks) {
+        for (long i = 0; i < maxTicks; i++) {
+            if (!tick()) {
+                return true;
+            }
+        }
+        return playArea.isFinished();
+    }
+
+    /**
+     * Runs one tick.
+     * @return false once the match is over.
+     */
+    public boolean tick() {
+        if (playArea.isFinished()) {
+            return false;
+        }
+        long start = System.nanoTime();
+        prepare();
+        pool.invoke(new Phase(true, 1, idBound));
+        pool.invoke(new Phase(false, 1, idBound));
+        apply();
+        tickCount++;
+        tickNanos += System.nanoTime() - start;
+
+        scheduler.run(scheduler.getTime() + TICK_MILLIS);
+        if (playArea.getPlayerCount() <= 1) {
+            playArea.finishMatch();
+            return false;
+        }
+        return true;
+    }
+
+    /** Takes the players in the play for this tick. */
+    private void prepare() {
+        idBound = playArea.getPlayerIdBound();
+        if (players.length < idBound) {
+            players = new Player[idBound];
+            proposals = new byte[idBound];
+            outcomes = new byte[idBound];
+        }
+        PlayerRegistry registry = playArea.getRegistry();
+        for (int id = 1; id < idBound; id++) {
+            players[id] = registry.isActive(id) ? registry.getPlayer(id) : null;
+        }
+    }
+
+    private void propose(int from, int to) {
+        for (int id = from; id < to; id++) {
+            Player player = players[id];
+            proposals[id] = (player == null) ? NONE
+                : (byte) player.getMovementDirection(random(id)).ordinal();
+        }
+    }
+
+    private void resolve(int from, int to) {
+        Grid grid = playArea.getGrid();
+        for (int id = from; id < to; id++) {
+            if (proposals[id] == NONE) {
+                continue;
+            }
+            Player player = players[id];
+            MovementDirection direction = DIRECTIONS[proposals[id]];
+            long cell = player.getCellIndex();
+            long target = grid.neighbour(cell, direction);
+            if (target == Grid.NO_CELL || grid.isOccupied(target)
+                    || lowerIdProposes(grid, target, cell, id)) {
+                outcomes[id] = REJECTED;
+            } else {
+                outcomes[id] = referee.moveIsFouled(player, direction) ? FOULED : MOVED;
+            }
+        }
+    }
+
+    /**
+     * @return true if a player with a lower id, next to the target, proposes to
+     * move into it too.
+     */
+    private boolean lowerIdProposes(Grid grid, long target, long cell, int id) {
+        for (MovementDirection direction : DIRECTIONS) {
+            long neighbour = grid.neighbour(target, direction);
+            if (neighbour == Grid.NO_CELL || neighbour == cell) {
+                continue;
+            }
+            int other = grid.get(neighbour);
+            if (other != Grid.EMPTY && other < id && other < idBound
+                    && proposals[other] != NONE
+                    && grid.neighbour(neighbour, DIRECTIONS[proposals[other]]) == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void apply() {
+        Grid grid = playArea.getGrid();
+        for (int id = 1; id < idBound; id++) {
+            if (proposals[id] == NONE) {
+                continue;
+            }
+            Player player = players[id];
+            long from = player.getCellIndex();
+            MovementDirection direction = DIRECTIONS[proposals[id]];
+            if (outcomes[id] == REJECTED) {
+                playArea.recordMove(id, from, direction, MoveVerdict.REJECTED);
+                continue;
+            }
+            if (outcomes[id] == FOULED) {
+                player.flag();
+                if (player.isPlayerToBeRemoved()) {
+                    referee.flagPlayer(player);
+                    playArea.recordMove(id, from, direction, MoveVerdict.EVICTED);
+                    continue;
+                }
+            }
+            playArea.recordMove(id, from, direction,
+                outcomes[id] == FOULED ? MoveVerdict.FOULED : MoveVerdict.ACCEPTED);
+            long to = grid.neighbour(from, direction);
+            grid.set(to, id);
+            grid.clear(from);
+            player.setCellIndex(to);
+        }
+        Arrays.fill(players, 1, idBound, null);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Tick {0}, players in the system {1}",
+                new Object[]{tickCount, playArea.getPlayerCount()});
+        }
+    }
+
+    /** Random bits of the player for the current tick, split mix of the inputs. */
+    private int random(int id) {
+        long z = seed + tickCount * 0x9E3779B97F4A7C15L + id * 0xC2B2AE3D27D4EB4FL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (int) (z ^ (z >>> 31));
+    }
+
+    /**
+     * @return number of ticks run.
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * @return ticks per second of wall clock, over all the ticks run.
+     */
+    public double getTicksPerSecond() {
+        return tickNanos == 0 ? 0 : tickCount * 1e9 / tickNanos;
+    }
+
+    /**
+     * One of the parallel phases over a range of player ids, split in halves
+     * down to <code>THRESHOLD</code> players.
+     */
+    private class Phase extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final boolean propose;
+        private final int from;
+        private final int to;
+
+        Phase(boolean propose, int from, int to) {
+            this.propose = propose;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                if (propose) {
+                    propose(from, to);
+                } else {
+                    resolve(from, to);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Phase(propose, from, middle), new Phase(propose, middle, to));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.faziz.playarea;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the delayed player actions on wall clock time, for all the players of a
+ * play area.
+ *
+ * All players share a small fixed number of hashed timing wheels, each turned
+ * by a thread of its own which also runs the tasks falling due on it. So the
+ * number of threads does not grow with the number of players, and since the
+ * tasks are linked into the wheel buckets directly, scheduling and cancelling
+ * do not allocate.
+ *
+ * @author faziz
+ */
+public class TimingWheelScheduler implements PlayerScheduler {
+
+    private static final Logger logger = Logger.getLogger(TimingWheelScheduler.class.getName());
+    /** Resolution of the wheels. */
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    /** Buckets per wheel, a power of two. Longer delays take several turns. */
+    private static final int WHEEL_SIZE = 1024;
+
+    private final Wheel[] wheels;
+    /** Hands out the wheels to the tasks, round robin. */
+    private final AtomicInteger nextWheel = new AtomicInteger();
+
+    /**
+     * @param threads number of wheels, each with a thread running its tasks.
+     */
+    public TimingWheelScheduler(int threads) {
+        wheels = new Wheel[threads];
+        for (int i = 0; i < threads; i++) {
+            wheels[i] = new Wheel();
+            Thread thread = new Thread(wheels[i], "player-scheduler-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+        logger.log(Level.INFO, "Player scheduler started with {0} thread(s).", threads);
+    }
+
+    public void schedule(ScheduledTask task, long delay) {
+        if (task.wheel == null) {
+            synchronized (task) {
+                if (task.wheel == null) {
+                    task.wheel = wheels[(nextWheel.getAndIncrement() & Integer.MAX_VALUE)
+                        % wheels.length];
+                }
+            }
+        }
+        task.wheel.schedule(task, TimeUnit.MILLISECONDS.toNanos(delay));
+    }
+
+    public void cancel(ScheduledTask task) {
+        if (task.wheel != null) {
+            task.wheel.cancel(task);
+        }
+    }
+
+    public void shutdown() {
+        for (Wheel wheel : wheels) {
+            wheel.stopped = true;
+        }
+    }
+
+    /**
+     * Timing wheel of <code>WHEEL_SIZE</code> buckets of <code>TICK_NANOS</code>
+     * each. A task is kept in the bucket of its deadline tick modulo the wheel
+     * size, and is run once the wheel thread reaches that tick.
+     */
+    static class Wheel implements Runnable {
+
+        /** Head of the task list of each bucket. */
+        private final ScheduledTask[] buckets = new ScheduledTask[WHEEL_SIZE];
+        private final long startNanos = System.nanoTime();
+        /** Last tick the wheel has expired the tasks of. */
+        private long currentTick = 0;
+        /** Tasks taken out of the wheel by the current tick. */
+        private ScheduledTask[] expired = new ScheduledTask[64];
+        private volatile boolean stopped = false;
+
+        synchronized void schedule(ScheduledTask task, long delayNanos) {
+            if (task.state == ScheduledTask.SCHEDULED) {
+                unlink(task);
+            }
+            long deadlineTick = (System.nanoTime() + delayNanos - startNanos + TICK_NANOS - 1)
+                / TICK_NANOS;
+            task.deadlineTick = Math.max(deadlineTick, currentTick + 1);
+            int bucket = (int) (task.deadlineTick & (WHEEL_SIZE - 1));
+            task.previous = null;
+            task.next = buckets[bucket];
+            if (task.next != null) {
+                task.next.previous = task;
+            }
+            buckets[bucket] = task;
+            task.state = ScheduledTask.SCHEDULED;
+        }
+
+        synchronized void cancel(ScheduledTask task) {
+            if (task.state == ScheduledTask.SCHEDULED) {
+                unlink(task);
+            }
+            task.state = ScheduledTask.IDLE;
+        }
+
+        /**
+         * Takes the task due at the next tick out of the wheel.
+         * @return number of tasks in <code>expired</code>.
+         */
+        private synchronized int expireNextTick() {
+            currentTick++;
+            int bucket = (int) (currentTick & (WHEEL_SIZE - 1));
+            int count = 0;
+            ScheduledTask task = buckets[bucket];
+            while (task != null) {
+                ScheduledTask next = task.next;
+                if (task.deadlineTick <= currentTick) {
+                    unlink(task);
+                    task.state = ScheduledTask.EXPIRED;
+                    if (count == expired.length) {
+                        expired = Arrays.copyOf(expired, count * 2);
+                    }
+                    expired[count++] = task;
+                }
+                task = next;
+            }
+            return count;
+        }
+
+        /**
+         * @return true if the expired task has neither been cancelled nor
+         * scheduled again since it was taken out of the wheel.
+         */
+        private synchronized boolean claim(ScheduledTask task) {
+            if (task.state == ScheduledTask.EXPIRED) {
+                task.state = ScheduledTask.IDLE;
+                return true;
+            }
+            return false;
+        }
+
+        private void unlink(ScheduledTask task) {
+            if (task.previous != null) {
+                task.previous.next = task.next;
+            } else {
+                buckets[(int) (task.deadlineTick & (WHEEL_SIZE - 1))] = task.next;
+            }
+            if (task.next != null) {
+                task.next.previous = task.previous;
+            }
+            task.previous = null;
+            task.next = null;
+        }
+
+        public void run() {
+            while (!stopped) {
+                long wait = startNanos + (currentTick + 1) * TICK_NANOS - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    continue;
+                }
+                int count = expireNextTick();
+                for (int i = 0; i < count; i++) {
+                    ScheduledTask task = expired[i];
+                    expired[i] = null;
+                    if (claim(task)) {
+                        runTask(task);
+                    }
+                }
+            }
+        }
+
+        private void runTask(ScheduledTask task) {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "Scheduled player action failed.", ex);
+            }
+        }
+    }
+}
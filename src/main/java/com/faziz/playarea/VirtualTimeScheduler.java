@@ -0,0 +1,162 @@
+package com.faziz.playarea;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the delayed player actions on a virtual clock, as a discrete event
+ * simulation.
+ *
+ * The tasks wait in a binary heap ordered by deadline, ties broken by the
+ * order they were scheduled in. <code>run</code> takes them out one at a time,
+ * moves the clock to the task's deadline and runs it, so no time is spent
+ * waiting and the same tasks scheduled in the same order always run in the same
+ * order. 
+ *
+ * Not thread safe, the tasks are scheduled and run by a single thread.
+ *
+ * @author faziz
+ */
+public class VirtualTimeScheduler implements PlayerScheduler {
+
+    private static final Logger logger = Logger.getLogger(VirtualTimeScheduler.class.getName());
+
+    private ScheduledTask[] heap = new ScheduledTask[64];
+    private int size = 0;
+    /** Current virtual time in milliseconds. */
+    private long now = 0;
+    private long nextSequence = 0;
+    /** Number of tasks run so far. */
+    private long taskCount = 0;
+    private boolean stopped = false;
+
+    public void schedule(ScheduledTask task, long delay) {
+        if (task.heapIndex >= 0) {
+            remove(task);
+        }
+        task.deadlineTick = now + delay;
+        task.sequence = nextSequence++;
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        task.heapIndex = size;
+        heap[size++] = task;
+        siftUp(task.heapIndex);
+    }
+
+    public void cancel(ScheduledTask task) {
+        if (task.heapIndex >= 0) {
+            remove(task);
+        }
+    }
+
+    public void shutdown() {
+        stopped = true;
+    }
+
+    /**
+     * Runs the tasks in deadline order until the scheduler is shut down, no
+     * task is left or the next task is due after <code>until</code>. Unless 
+     * shut down, the clock then stands at <code>until</code>.
+     * @param until virtual time in milliseconds to stop at.
+     * @return number of tasks run.
+     */
+    public long run(long until) {
+        long start = taskCount;
+        while (!stopped && size > 0 && heap[0].deadlineTick <= until) {
+            ScheduledTask task = heap[0];
+            remove(task);
+            now = task.deadlineTick;
+            taskCount++;
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "Scheduled player action failed.", ex);
+            }
+        }
+        if (!stopped && now < until) {
+            now = until;
+        }
+        return taskCount - start;
+    }
+
+    /**
+     * @return current virtual time in milliseconds.
+     */
+    public long getTime() {
+        return now;
+    }
+
+    /**
+     * @return number of tasks run so far.
+     */
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    /**
+     * @return number of tasks waiting.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    private void remove(ScheduledTask task) {
+        int index = task.heapIndex;
+        ScheduledTask last = heap[--size];
+        heap[size] = null;
+        task.heapIndex = -1;
+        if (last != task) {
+            heap[index] = last;
+            last.heapIndex = index;
+            siftDown(index);
+            siftUp(last.heapIndex);
+        }
+    }
+
+    private void siftUp(int index) {
+        ScheduledTask task = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(task, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].heapIndex = index;
+            index = parent;
+        }
+        heap[index] = task;
+        task.heapIndex = index;
+    }
+
+    private void siftDown(int index) {
+        ScheduledTask task = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], task)) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = task;
+        task.heapIndex = index;
+    }
+
+    private static boolean before(ScheduledTask a, ScheduledTask b) {
+        if (a.deadlineTick != b.deadlineTick) {
+            return a.deadlineTick < b.deadlineTick;
+        }
+        return a.sequence < b.sequence;
+    }
+}
@@ -0,0 +1,85 @@
+package com.faziz.playarea.channel;
+
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.Player;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Request channel on an <code>ArrayBlockingQueue</code>, producers and the 
+ * consumer share a single lock.
+ * 
+ * The requests are taken from a pool of <code>capacity</code> preallocated ones
+ * and returned to it once handled, so waiting for a free request is what makes
+ * a producer wait on a full channel.
+ *
+ * @author faziz
+ */
+public class BlockingQueueChannel implements RequestChannel {
+
+    private final BlockingQueue<MoveRequest> queue;
+    /** Requests not in use. */
+    private final BlockingQueue<MoveRequest> pool;
+    private final int capacity;
+
+    /**
+     * @param capacity
+     * @param fair true to serve waiting producers in FIFO order.
+     */
+    public BlockingQueueChannel(int capacity, boolean fair) {
+        this.queue = new ArrayBlockingQueue<MoveRequest>(capacity, fair);
+        this.pool = new ArrayBlockingQueue<MoveRequest>(capacity, fair);
+        this.capacity = capacity;
+        for (int i = 0; i < capacity; i++) {
+            pool.add(new MoveRequest());
+        }
+    }
+
+    public void put(Player player, MovementDirection direction) throws InterruptedException {
+        MoveRequest moveRequest = pool.take();
+        moveRequest.set(player, direction);
+        queue.add(moveRequest);
+    }
+
+    public boolean offer(Player player, MovementDirection direction) {
+        MoveRequest moveRequest = pool.poll();
+        if (moveRequest == null) {
+            return false;
+        }
+        moveRequest.set(player, direction);
+        queue.add(moveRequest);
+        return true;
+    }
+
+    public int drain(RequestHandler handler, int max) throws InterruptedException {
+        handle(handler, queue.take());
+        return 1 + poll(handler, max - 1);
+    }
+
+    public int poll(RequestHandler handler, int max) {
+        int count = 0;
+        MoveRequest moveRequest;
+        while (count < max && (moveRequest = queue.poll()) != null) {
+            handle(handler, moveRequest);
+            count++;
+        }
+        return count;
+    }
+
+    private void handle(RequestHandler handler, MoveRequest moveRequest) {
+        try {
+            handler.onRequest(moveRequest.getPlayer(), moveRequest.getDirection());
+        } finally {
+            moveRequest.clear();
+            pool.add(moveRequest);
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
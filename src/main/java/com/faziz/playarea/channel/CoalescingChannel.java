@@ -0,0 +1,216 @@
+package com.faziz.playarea.channel;
+
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.Player;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request channel holding at most one move per player, which never makes a
+ * producer wait.
+ *
+ * The direction of each player's waiting move is kept in a slot under the
+ * player's id, the players with a move waiting are queued in arrival order. A
+ * request from a player whose slot is empty fills the slot and queues the
+ * player, a request from a player whose slot is taken is handled by the
+ * <code>OverloadPolicy</code>, without queueing anything. The queue holds up
+ * to <code>capacity</code> players, requests from other players beyond that
+ * are shed. So a burst of requests can not back up the coordinator further
+ * than one move per player, and no player's move waits behind stale moves of
+ * its own.
+ *
+ * <code>put</code> is <code>offer</code>: requests it can not take are shed as
+ * well. The requests shed are counted, and with <code>OverloadPolicy.REJECT</code>
+ * handed to the <code>ShedHandler</code> so the player can be told.
+ *
+ * @author faziz
+ */
+public class CoalescingChannel implements RequestChannel {
+
+    /** Slots per page, pages are added as player ids grow. */
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /** Direction of the waiting move of each player id, null if none. */
+    private volatile AtomicReferenceArray<MovementDirection>[] pages;
+    /** Players with a move waiting, in arrival order. */
+    private final BlockingQueue<Player> waiting;
+    /** Players queued or about to be, never above the capacity. */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final int capacity;
+    private final OverloadPolicy policy;
+    private final ShedHandler shedHandler;
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param capacity players with a move waiting at any time.
+     * @param policy
+     * @param shedHandler told of the rejected requests, may be null unless the
+     * policy is <code>OverloadPolicy.REJECT</code>.
+     */
+    public CoalescingChannel(int capacity, OverloadPolicy policy, ShedHandler shedHandler) {
+        if (policy == OverloadPolicy.REJECT && shedHandler == null) {
+            throw new IllegalArgumentException("Rejecting requests needs a shed handler.");
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.shedHandler = shedHandler;
+        this.waiting = new ArrayBlockingQueue<Player>(capacity);
+        this.pages = newPages(0);
+    }
+
+    /**
+     * Same as <code>offer</code>, never waits.
+     */
+    public void put(Player player, MovementDirection direction) {
+        offer(player, direction);
+    }
+
+    /**
+     * @return true if the request is waiting for the coordinator, on its own or
+     * in place of an earlier one of the player.
+     */
+    public boolean offer(Player player, MovementDirection direction) {
+        int id = player.getId();
+        AtomicReferenceArray<MovementDirection> page = page(id);
+        int slot = id & PAGE_MASK;
+        while (true) {
+            MovementDirection previous = page.get(slot);
+            if (previous != null) {
+                if (policy != OverloadPolicy.COALESCE) {
+                    return shed(player, direction);
+                }
+                if (page.compareAndSet(slot, previous, direction)) {
+                    coalesced.increment();
+                    return true;
+                }
+                // Taken by the coordinator meanwhile, the slot is free again.
+                continue;
+            }
+            if (pending.incrementAndGet() > capacity) {
+                pending.decrementAndGet();
+                return shed(player, direction);
+            }
+            if (page.compareAndSet(slot, null, direction)) {
+                waiting.add(player);
+                return true;
+            }
+            // Another request of the player got in first.
+            pending.decrementAndGet();
+        }
+    }
+
+    private boolean shed(Player player, MovementDirection direction) {
+        if (policy == OverloadPolicy.REJECT) {
+            rejected.increment();
+            shedHandler.requestShed(player, direction);
+        } else {
+            dropped.increment();
+        }
+        return false;
+    }
+
+    public int drain(RequestHandler handler, int max) throws InterruptedException {
+        handle(handler, waiting.take());
+        return 1 + poll(handler, max - 1);
+    }
+
+    public int poll(RequestHandler handler, int max) {
+        int count = 0;
+        Player player;
+        while (count < max && (player = waiting.poll()) != null) {
+            handle(handler, player);
+            count++;
+        }
+        return count;
+    }
+
+    private void handle(RequestHandler handler, Player player) {
+        int id = player.getId();
+        MovementDirection direction = page(id).getAndSet(id & PAGE_MASK, null);
+        pending.decrementAndGet();
+        handler.onRequest(player, direction);
+    }
+
+    /**
+     * @return the page holding the slot of the id, added if need be.
+     */
+    private AtomicReferenceArray<MovementDirection> page(int id) {
+        AtomicReferenceArray<MovementDirection>[] current = pages;
+        int index = id >>> PAGE_BITS;
+        if (index < current.length) {
+            return current[index];
+        }
+        return addPages(index);
+    }
+
+    private synchronized AtomicReferenceArray<MovementDirection> addPages(int index) {
+        AtomicReferenceArray<MovementDirection>[] current = pages;
+        if (index >= current.length) {
+            AtomicReferenceArray<MovementDirection>[] grown =
+                newPages(Math.max(index + 1, current.length * 2));
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new AtomicReferenceArray<MovementDirection>(PAGE_SIZE);
+            }
+            pages = grown;
+            current = grown;
+        }
+        return current[index];
+    }
+
+    /**
+     * @return an array for the pages, there are no arrays of a generic type.
+     */
+    @SuppressWarnings("unchecked")
+    private static AtomicReferenceArray<MovementDirection>[] newPages(int length) {
+        AtomicReferenceArray<?>[] pages = new AtomicReferenceArray<?>[length];
+        return (AtomicReferenceArray<MovementDirection>[]) pages;
+    }
+
+    public int size() {
+        return waiting.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public OverloadPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return requests that took the place of an earlier one of the player.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return requests shed without telling anyone.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return requests shed and handed to the shed handler.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return requests shed, dropped or rejected.
+     */
+    public long getShedCount() {
+        return dropped.sum() + rejected.sum();
+    }
+}
@@ -0,0 +1,49 @@
+package com.faziz.playarea.channel;
+
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.Player;
+
+/**
+ * A player's request to move in a direction, as carried by a request channel.
+ * 
+ * Channels may reuse the same instance for many requests, so the consumer has 
+ * to copy out what it needs while handling it.
+ *
+ * @author faziz
+ */
+public class MoveRequest {
+
+    private Player player = null;
+    private MovementDirection direction = null;
+
+    public MoveRequest() {
+    }
+
+    public MoveRequest(Player player, MovementDirection direction) {
+        this.player = player;
+        this.direction = direction;
+    }
+
+    /**
+     * @return the player
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * @return the direction
+     */
+    public MovementDirection getDirection() {
+        return direction;
+    }
+
+    void set(Player player, MovementDirection direction) {
+        this.player = player;
+        this.direction = direction;
+    }
+
+    void clear() {
+        set(null, null);
+    }
+}
@@ -0,0 +1,21 @@
+package com.faziz.playarea.channel;
+
+/**
+ * What a <code>CoalescingChannel</code> does with a request it cannot take as
+ * is: one from a player whose previous move is still waiting, or one arriving
+ * while the channel is full.
+ *
+ * @author faziz
+ */
+public enum OverloadPolicy {
+
+    /** The newer request is dropped, the waiting one stays. */
+    DROP,
+    /**
+     * The newer request takes the place of the waiting one of the player. When
+     * the channel is full it is dropped.
+     */
+    COALESCE,
+    /** The newer request is dropped and handed to the <code>ShedHandler</code>. */
+    REJECT
+}
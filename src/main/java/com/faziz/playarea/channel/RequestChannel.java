@@ -0,0 +1,58 @@
+package com.faziz.playarea.channel;
+
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.Player;
+
+/**
+ * Carries the movement requests from the players to the play area coordinator.
+ * 
+ * Any number of threads may put requests, only the coordinator takes them out.
+ *
+ * @author faziz
+ */
+public interface RequestChannel {
+
+    /**
+     * Adds a request, waiting for room if the channel is full.
+     * @param player
+     * @param direction
+     * @throws InterruptedException 
+     */
+    void put(Player player, MovementDirection direction) throws InterruptedException;
+
+    /**
+     * Adds a request if the channel takes it right away, never waits.
+     * @param player
+     * @param direction
+     * @return false if the request was not taken.
+     */
+    boolean offer(Player player, MovementDirection direction);
+
+    /**
+     * Waits for at least one request, then hands up to <code>max</code> requests
+     * to the handler in arrival order.
+     * @param handler
+     * @param max
+     * @return number of requests handed over.
+     * @throws InterruptedException 
+     */
+    int drain(RequestHandler handler, int max) throws InterruptedException;
+
+    /**
+     * Hands up to <code>max</code> requests to the handler without waiting.
+     * @param handler
+     * @param max
+     * @return number of requests handed over, 0 if the channel is empty.
+     */
+    int poll(RequestHandler handler, int max);
+
+    /**
+     * @return number of requests waiting, may be stale by the time it returns.
+     */
+    int size();
+
+    /**
+     * @return maximum number of requests waiting at any time.
+     */
+    int capacity();
+}
@@ -0,0 +1,14 @@
+package com.faziz.playarea.channel;
+
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.Player;
+
+/**
+ * Receives the requests drained from a request channel.
+ *
+ * @author faziz
+ */
+public interface RequestHandler {
+
+    void onRequest(Player player, MovementDirection direction);
+}
@@ -0,0 +1,146 @@
+package com.faziz.playarea.channel;
+
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.Player;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock free multi producer, single consumer request channel on a ring of
+ * preallocated <code>MoveRequest</code> slots.
+ *
+ * A producer claims the next sequence with a single atomic increment, waits
+ * until the consumer has freed the slot the sequence maps to, fills the slot in
+ * and publishes it by writing the sequence into the slot's entry of
+ * <code>published</code>. The consumer reads the slots in sequence order as long
+ * as they are published and frees them once a batch is handed over.
+ *
+ * @author faziz
+ */
+public class RingBufferChannel implements RequestChannel {
+
+    private final MoveRequest[] slots;
+    private final int mask;
+    /** Sequence last published in each slot. */
+    private final AtomicLongArray published;
+    /** Next sequence to be claimed by a producer. */
+    private final AtomicLong claimed = new AtomicLong();
+    /** Next sequence to be read by the consumer, the slots before it are free. */
+    private final AtomicLong consumed = new AtomicLong();
+    private final WaitStrategy waitStrategy;
+    /** Consumer thread while it is parked, for <code>WaitStrategy.PARK</code>. */
+    private volatile Thread waitingConsumer = null;
+
+    /**
+     * @param capacity rounded up to the next power of two.
+     * @param waitStrategy
+     */
+    public RingBufferChannel(int capacity, WaitStrategy waitStrategy) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new MoveRequest[size];
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        this.waitStrategy = waitStrategy;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new MoveRequest();
+            // Nothing is published yet, sequence i is only published as i.
+            published.set(i, i - size);
+        }
+    }
+
+    /**
+     * Adds the request. Once a sequence is claimed it has to be published, so an
+     * interrupt while waiting for room is only passed on after the put.
+     */
+    public void put(Player player, MovementDirection direction) throws InterruptedException {
+        long sequence = claimed.getAndIncrement();
+        long wrapPoint = sequence - slots.length;
+        boolean interrupted = false;
+        while (wrapPoint >= consumed.get()) {
+            waitStrategy.idle();
+            interrupted |= Thread.interrupted();
+        }
+
+        publish(sequence, player, direction);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Claims a sequence only while its slot is free, so it never waits.
+     */
+    public boolean offer(Player player, MovementDirection direction) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - slots.length >= consumed.get()) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        publish(sequence, player, direction);
+        return true;
+    }
+
+    private void publish(long sequence, Player player, MovementDirection direction) {
+        int index = (int) (sequence & mask);
+        slots[index].set(player, direction);
+        published.set(index, sequence);
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    public int drain(RequestHandler handler, int max) throws InterruptedException {
+        int count = poll(handler, max);
+        while (count == 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (waitStrategy == WaitStrategy.PARK) {
+                waitingConsumer = Thread.currentThread();
+                count = poll(handler, max);
+                if (count == 0) {
+                    LockSupport.park(this);
+                }
+                waitingConsumer = null;
+            } else {
+                waitStrategy.idle();
+                count = poll(handler, max);
+            }
+        }
+        return count;
+    }
+
+    public int poll(RequestHandler handler, int max) {
+        long next = consumed.get();
+        int count = 0;
+        while (count < max) {
+            int index = (int) (next & mask);
+            if (published.get(index) != next) {
+                break;
+            }
+            MoveRequest moveRequest = slots[index];
+            handler.onRequest(moveRequest.getPlayer(), moveRequest.getDirection());
+            moveRequest.clear();
+            next++;
+            count++;
+        }
+        if (count > 0) {
+            consumed.lazySet(next);
+        }
+        return count;
+    }
+
+    public int size() {
+        long size = claimed.get() - consumed.get();
+        return (int) Math.max(0, Math.min(size, slots.length));
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,15 @@
+package com.faziz.playarea.channel;
+
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.Player;
+
+/**
+ * Told of the requests a <code>CoalescingChannel</code> rejects, on the thread
+ * that offered them.
+ *
+ * @author faziz
+ */
+public interface ShedHandler {
+
+    void requestShed(Player player, MovementDirection direction);
+}
@@ -0,0 +1,43 @@
+package com.faziz.playarea.channel;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a ring buffer producer or consumer does while it cannot make progress.
+ *
+ * @author faziz
+ */
+public enum WaitStrategy {
+
+    /** Keeps spinning, lowest latency, burns a core per waiting thread. */
+    BUSY_SPIN {
+        @Override
+        void idle() {
+        }
+    },
+    /** Gives up the core to other runnable threads between checks. */
+    YIELD {
+        @Override
+        void idle() {
+            Thread.yield();
+        }
+    },
+    /** 
+     * Parks between checks. A waiting consumer is unparked by the producers as
+     * soon as a request is published.
+     */
+    PARK {
+        @Override
+        void idle() {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    };
+
+    /** Longest a parked thread sleeps before checking again. */
+    static final long PARK_NANOS = 50 * 1000;
+
+    /**
+     * Called repeatedly until the waiting condition clears.
+     */
+    abstract void idle();
+}
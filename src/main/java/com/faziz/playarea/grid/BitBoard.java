@@ -0,0 +1,246 @@
+package com.faziz.playarea.grid;
+
+import java.util.Arrays;
+
+/**
+ * One bit per cell of a grid, set for the occupied cells, for questions about
+ * the whole board at once.
+ *
+ * Each row starts on a word of its own, so the cells above and below a cell sit
+ * at the same bit of the words one row apart and vertical neighbours are plain
+ * word reads. Horizontal neighbours are shifts, carrying the bit across the
+ * words of a row. Board wide queries like "every cell next to a player" thus
+ * run 64 cells at a time.
+ *
+ * A board is a snapshot, taken with <code>copyFrom</code>, and is not changed
+ * by later moves. The same board can be filled again to avoid allocating.
+ *
+ * @author faziz
+ */
+public class BitBoard {
+
+    private final int rows;
+    private final int columns;
+    private final int wordsPerRow;
+    private final long[] words;
+    /** Valid bits of the last word of each row. */
+    private final long lastWordMask;
+
+    public BitBoard(int rows, int columns) {
+        long wordCount = (long) rows * ((columns + 63) >>> 6);
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Grid of " + rows + "x" + columns
+                + " is too large for a bit board.");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.wordsPerRow = (columns + 63) >>> 6;
+        this.words = new long[(int) wordCount];
+        int tail = columns & 63;
+        this.lastWordMask = (tail == 0) ? -1L : (1L << tail) - 1;
+    }
+
+    /**
+     * @param grid
+     * @return a new board holding the occupied cells of the grid.
+     */
+    public static BitBoard of(Grid grid) {
+        BitBoard board = new BitBoard(grid.getRows(), grid.getColumns());
+        board.copyFrom(grid);
+        return board;
+    }
+
+    /**
+     * Sets the bits to the occupied cells of the grid, of the same size.
+     * @param grid
+     */
+    public void copyFrom(Grid grid) {
+        if (grid.getRows() != rows || grid.getColumns() != columns) {
+            throw new IllegalArgumentException("Grid is " + grid.getRows() + "x"
+                + grid.getColumns() + ", board is " + rows + "x" + columns + ".");
+        }
+        Arrays.fill(words, 0);
+        long index = 0;
+        for (int row = 0; row < rows; row++) {
+            int rowStart = row * wordsPerRow;
+            for (int column = 0; column < columns; column++) {
+                if (grid.isOccupied(index++)) {
+                    words[rowStart + (column >>> 6)] |= 1L << column;
+                }
+            }
+        }
+    }
+
+    public boolean get(int row, int column) {
+        return (words[row * wordsPerRow + (column >>> 6)] & (1L << column)) != 0;
+    }
+
+    public void set(int row, int column) {
+        words[row * wordsPerRow + (column >>> 6)] |= 1L << column;
+    }
+
+    public void clear(int row, int column) {
+        words[row * wordsPerRow + (column >>> 6)] &= ~(1L << column);
+    }
+
+    /**
+     * @return number of set cells.
+     */
+    public long cardinality() {
+        long count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @return share of the cells that are set.
+     */
+    public double density() {
+        return (double) cardinality() / ((long) rows * columns);
+    }
+
+    /**
+     * Counts the set cells in a rectangle, for how crowded an area is.
+     * @param fromRow first row.
+     * @param fromColumn first column.
+     * @param toRow row after the last one.
+     * @param toColumn column after the last one.
+     * @return number of set cells.
+     */
+    public long cardinality(int fromRow, int fromColumn, int toRow, int toColumn) {
+        long count = 0;
+        if (fromColumn >= toColumn) {
+            return 0;
+        }
+        int firstWord = fromColumn >>> 6;
+        int lastWord = (toColumn - 1) >>> 6;
+        long firstMask = -1L << fromColumn;
+        long lastMask = -1L >>> (63 - ((toColumn - 1) & 63));
+        for (int row = fromRow; row < toRow; row++) {
+            int rowStart = row * wordsPerRow;
+            for (int word = firstWord; word <= lastWord; word++) {
+                long bits = words[rowStart + word];
+                if (word == firstWord) {
+                    bits &= firstMask;
+                }
+                if (word == lastWord) {
+                    bits &= lastMask;
+                }
+                count += Long.bitCount(bits);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return a new board with the cells next to at least one set cell.
+     */
+    public BitBoard adjacent() {
+        BitBoard result = new BitBoard(rows, columns);
+        long[] left = new long[wordsPerRow];
+        long[] right = new long[wordsPerRow];
+        long[] up = new long[wordsPerRow];
+        long[] down = new long[wordsPerRow];
+        for (int row = 0; row < rows; row++) {
+            neighbours(row, left, right, up, down);
+            int rowStart = row * wordsPerRow;
+            for (int word = 0; word < wordsPerRow; word++) {
+                result.words[rowStart + word] = left[word] | right[word] | up[word] | down[word];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The cells a move into is a foul: a player moving in from a next cell
+     * meets another player there, so the cell has at least two set neighbours.
+     * @return a new board with the cells next to at least two set cells.
+     */
+    public BitBoard crowded() {
+        BitBoard result = new BitBoard(rows, columns);
+        long[] left = new long[wordsPerRow];
+        long[] right = new long[wordsPerRow];
+        long[] up = new long[wordsPerRow];
+        long[] down = new long[wordsPerRow];
+        for (int row = 0; row < rows; row++) {
+            neighbours(row, left, right, up, down);
+            int rowStart = row * wordsPerRow;
+            for (int word = 0; word < wordsPerRow; word++) {
+                long a = left[word];
+                long b = right[word];
+                long c = up[word];
+                long d = down[word];
+                result.words[rowStart + word] = (a & b) | (c & d) | ((a | b) & (c | d));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The players standing next to another player, who would be flagged by any
+     * move that keeps them in touch.
+     * @return a new board with the set cells next to another set cell.
+     */
+    public BitBoard inFoulPosition() {
+        BitBoard result = adjacent();
+        for (int i = 0; i < words.length; i++) {
+            result.words[i] &= words[i];
+        }
+        return result;
+    }
+
+    /**
+     * @param fromIndex row major cell index to start at.
+     * @return row major index of the first set cell at or after it,
+     * <code>Grid.NO_CELL</code> if none.
+     */
+    public long nextSetCell(long fromIndex) {
+        if (fromIndex < 0 || fromIndex >= (long) rows * columns) {
+            return Grid.NO_CELL;
+        }
+        int row = (int) (fromIndex / columns);
+        int column = (int) (fromIndex % columns);
+        int word = row * wordsPerRow + (column >>> 6);
+        long bits = words[word] & (-1L << column);
+        while (true) {
+            if (bits != 0) {
+                int rowOfWord = word / wordsPerRow;
+                int columnOfBit = ((word % wordsPerRow) << 6) + Long.numberOfTrailingZeros(bits);
+                return (long) rowOfWord * columns + columnOfBit;
+            }
+            if (++word == words.length) {
+                return Grid.NO_CELL;
+            }
+            bits = words[word];
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Fills in, for each word of the row, the bits of the cells whose left,
+     * right, upper and lower neighbour is set.
+     */
+    private void neighbours(int row, long[] left, long[] right, long[] up, long[] down) {
+        int rowStart = row * wordsPerRow;
+        for (int word = 0; word < wordsPerRow; word++) {
+            long bits = words[rowStart + word];
+            long previous = (word > 0) ? words[rowStart + word - 1] : 0;
+            long next = (word < wordsPerRow - 1) ? words[rowStart + word + 1] : 0;
+            long mask = (word == wordsPerRow - 1) ? lastWordMask : -1L;
+            // Cell c has its left neighbour set if bit c - 1 is, and so on.
+            left[word] = ((bits << 1) | (previous >>> 63)) & mask;
+            right[word] = ((bits >>> 1) | (next << 63)) & mask;
+            up[word] = (row > 0) ? words[rowStart - wordsPerRow + word] : 0;
+            down[word] = (row < rows - 1) ? words[rowStart + wordsPerRow + word] : 0;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.faziz.playarea.grid;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Grid that players can change from any thread, one slot per cell.
+ *
+ * Laid out like the <code>DenseGrid</code>, but on atomic arrays: reads and
+ * writes are volatile and <code>compareAndSet</code> is atomic, so a cell can be
+ * claimed by one player only, without any lock.
+ *
+ * @author faziz
+ */
+public class ConcurrentGrid extends Grid {
+
+    /** Slots per page, a power of two. */
+    private static final int PAGE_SHIFT = 27;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final long PAGE_MASK = PAGE_SIZE - 1;
+
+    /** Player id per cell, row major. */
+    private final AtomicIntegerArray[] pages;
+
+    public ConcurrentGrid(int rows, int columns) {
+        super(rows, columns);
+
+        int pageCount = (int) ((size() + PAGE_MASK) >>> PAGE_SHIFT);
+        pages = new AtomicIntegerArray[pageCount];
+        for (int page = 0; page < pageCount; page++) {
+            long remaining = size() - ((long) page << PAGE_SHIFT);
+            pages[page] = new AtomicIntegerArray((int) Math.min(remaining, PAGE_SIZE));
+        }
+    }
+
+    @Override
+    public int get(long index) {
+        return pages[(int) (index >>> PAGE_SHIFT)].get((int) (index & PAGE_MASK));
+    }
+
+    @Override
+    public void set(long index, int playerId) {
+        int previous = pages[(int) (index >>> PAGE_SHIFT)].getAndSet((int) (index & PAGE_MASK), 
+            playerId);
+        cellChanged(index, previous, playerId);
+    }
+
+    @Override
+    public boolean compareAndSet(long index, int expected, int playerId) {
+        if (!pages[(int) (index >>> PAGE_SHIFT)].compareAndSet((int) (index & PAGE_MASK),
+                expected, playerId)) {
+            return false;
+        }
+        cellChanged(index, expected, playerId);
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+package com.faziz.playarea.grid;
+
+/**
+ * Grid backed by flat <code>int</code> arrays, one slot per cell.
+ *
+ * Slots are laid out row by row, so a cell and its left/right neighbours sit
+ * next to each other in memory and neighbour lookups are plain array reads.
+ * The slots are split into pages of <code>PAGE_SIZE</code> ints so that boards
+ * larger than 2^31 cells can be held.
+ *
+ * Next to the slots the grid keeps, per cell, the number of occupied cells
+ * around it, updated whenever a cell is taken or freed. The foul check is then
+ * a single read of the cell moved into instead of four.
+ *
+ * @author faziz
+ */
+public class DenseGrid extends Grid {
+
+    /** Slots per page, a power of two. */
+    private static final int PAGE_SHIFT = 27;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final long PAGE_MASK = PAGE_SIZE - 1;
+
+    /** Player id per cell, row major. */
+    private final int[][] pages;
+    /** Number of occupied neighbours per cell, laid out like the slots. */
+    private final byte[][] neighbourCounts;
+
+    public DenseGrid(int rows, int columns) {
+        super(rows, columns);
+
+        int pageCount = (int) ((size() + PAGE_MASK) >>> PAGE_SHIFT);
+        pages = new int[pageCount][];
+        neighbourCounts = new byte[pageCount][];
+        for (int page = 0; page < pageCount; page++) {
+            long remaining = size() - ((long) page << PAGE_SHIFT);
+            pages[page] = new int[(int) Math.min(remaining, PAGE_SIZE)];
+            neighbourCounts[page] = new byte[(int) Math.min(remaining, PAGE_SIZE)];
+        }
+    }
+
+    @Override
+    public int get(long index) {
+        return pages[(int) (index >>> PAGE_SHIFT)][(int) (index & PAGE_MASK)];
+    }
+
+    @Override
+    public void set(long index, int playerId) {
+        int[] page = pages[(int) (index >>> PAGE_SHIFT)];
+        int offset = (int) (index & PAGE_MASK);
+        int previous = page[offset];
+        page[offset] = playerId;
+        if ((previous == EMPTY) != (playerId == EMPTY)) {
+            updateNeighbourCounts(index, (playerId == EMPTY) ? -1 : 1);
+        }
+        cellChanged(index, previous, playerId);
+    }
+
+    @Override
+    public int occupiedNeighbours(long index) {
+        return neighbourCounts[(int) (index >>> PAGE_SHIFT)][(int) (index & PAGE_MASK)];
+    }
+
+    @Override
+    public boolean isNeighbourOccupied(long index, long ignored) {
+        int count = occupiedNeighbours(index);
+        if (ignored != NO_CELL && isOccupied(ignored) && isAdjacent(index, ignored)) {
+            count--;
+        }
+        return count > 0;
+    }
+
+    private void updateNeighbourCounts(long index, int change) {
+        int columns = getColumns();
+        long column = index % columns;
+        if (column > 0) {
+            addToCount(index - 1, change);
+        }
+        if (column < columns - 1) {
+            addToCount(index + 1, change);
+        }
+        if (index >= columns) {
+            addToCount(index - columns, change);
+        }
+        if (index + columns < size()) {
+            addToCount(index + columns, change);
+        }
+    }
+
+    private void addToCount(long index, int change) {
+        neighbourCounts[(int) (index >>> PAGE_SHIFT)][(int) (index & PAGE_MASK)] += change;
+    }
+}
@@ -0,0 +1,77 @@
+package com.faziz.playarea.grid;
+
+import java.util.Random;
+
+/**
+ * The empty cells of a grid, kept as an indexable list so that a uniformly
+ * random empty cell can be picked in constant time at any occupancy.
+ *
+ * <code>cells</code> holds the empty cells in no particular order, the first
+ * <code>count</code> entries are valid. <code>positions</code> holds where each
+ * cell sits in <code>cells</code>, -1 for occupied cells, so a cell is taken
+ * out by moving the last entry into its place.
+ *
+ * Kept up to date by the grid. The grid changes the cell first and the index
+ * after, so a cell picked here may just have been taken and the caller has to
+ * be ready to pick again.
+ *
+ * @author faziz
+ */
+public class FreeCellIndex {
+
+    private final int[] cells;
+    private final int[] positions;
+    private int count = 0;
+
+    /**
+     * @param grid grid of at most <code>Integer.MAX_VALUE</code> cells, its 
+     * empty cells make up the initial index.
+     */
+    FreeCellIndex(Grid grid) {
+        int size = (int) grid.size();
+        cells = new int[size];
+        positions = new int[size];
+        for (int cell = 0; cell < size; cell++) {
+            if (grid.isOccupied(cell)) {
+                positions[cell] = -1;
+            } else {
+                positions[cell] = count;
+                cells[count++] = cell;
+            }
+        }
+    }
+
+    synchronized void add(int cell) {
+        if (positions[cell] >= 0) {
+            return;
+        }
+        positions[cell] = count;
+        cells[count++] = cell;
+    }
+
+    synchronized void remove(int cell) {
+        int position = positions[cell];
+        if (position < 0) {
+            return;
+        }
+        int last = cells[--count];
+        cells[position] = last;
+        positions[last] = position;
+        positions[cell] = -1;
+    }
+
+    /**
+     * @param random
+     * @return a random empty cell, <code>Grid.NO_CELL</code> if there is none.
+     */
+    public synchronized long random(Random random) {
+        return (count == 0) ? Grid.NO_CELL : cells[random.nextInt(count)];
+    }
+
+    /**
+     * @return number of empty cells.
+     */
+    public synchronized int size() {
+        return count;
+    }
+}
@@ -0,0 +1,266 @@
+package com.faziz.playarea.grid;
+
+import com.faziz.playarea.MovementDirection;
+import java.util.Random;
+
+/**
+ * Occupancy of the play area.
+ *
+ * Cells are addressed by a row major <code>long</code> index and each one holds
+ * the id of the player occupying it, or <code>EMPTY</code>. The index
+ * arithmetic is shared here, subclasses only decide how the ids are stored.
+ *
+ * @author faziz
+ */
+public abstract class Grid {
+
+    /** Slot value of an unoccupied cell. */
+    public static final int EMPTY = 0;
+    /** Index returned for coordinates outside of the grid. */
+    public static final long NO_CELL = -1;
+    /** Random cells tried for an empty one before scanning the grid. */
+    private static final int RANDOM_TRIES = 64;
+
+    private final int rows;
+    private final int columns;
+    private final long size;
+    /** Empty cells, if indexed. */
+    private volatile FreeCellIndex freeCells = null;
+
+    protected Grid(int rows, int columns) {
+        if (rows < 1 || columns < 1) {
+            throw new IllegalArgumentException("Grid needs at least one row and column, got "
+                    + rows + "x" + columns + ".");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.size = (long) rows * columns;
+    }
+
+    /**
+     * @param index
+     * @return id of the player occupying the cell, or <code>EMPTY</code>.
+     */
+    public abstract int get(long index);
+
+    public abstract void set(long index, int playerId);
+
+    /**
+     * Sets the cell to the player id if it currently holds <code>expected</code>.
+     * Only atomic on grids made for concurrent use, others simply check and set.
+     * @param index
+     * @param expected
+     * @param playerId
+     * @return true if the cell was set.
+     */
+    public boolean compareAndSet(long index, int expected, int playerId) {
+        if (get(index) != expected) {
+            return false;
+        }
+        set(index, playerId);
+        return true;
+    }
+
+    /**
+     * To be called by the subclasses on every change of a cell.
+     * @param index
+     * @param previous player id the cell held before.
+     * @param playerId player id the cell holds now.
+     */
+    protected final void cellChanged(long index, int previous, int playerId) {
+        FreeCellIndex free = freeCells;
+        if (free == null || (previous == EMPTY) == (playerId == EMPTY)) {
+            return;
+        }
+        if (playerId == EMPTY) {
+            free.add((int) index);
+        } else {
+            free.remove((int) index);
+        }
+    }
+
+    /**
+     * Starts keeping an index of the empty cells, for picking random empty 
+     * cells in constant time. Costs two ints per cell.
+     */
+    public void enableFreeCellIndex() {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Grid of " + size + " cells is too large to "
+                + "index its free cells.");
+        }
+        freeCells = new FreeCellIndex(this);
+    }
+
+    public void disableFreeCellIndex() {
+        freeCells = null;
+    }
+
+    /**
+     * @return the index of the empty cells, null if not kept.
+     */
+    public FreeCellIndex getFreeCellIndex() {
+        return freeCells;
+    }
+
+    /**
+     * Picks a random empty cell. From the free cell index if there is one, 
+     * otherwise by trying random cells until an empty one comes up, which is
+     * quick as long as the grid is not crowded. After
+     * <code>RANDOM_TRIES</code> occupied cells in a row the grid is scanned
+     * from a random cell on instead.
+     * @param random
+     * @return the cell, <code>NO_CELL</code> if the grid is full.
+     */
+    public long randomFreeCell(Random random) {
+        FreeCellIndex free = freeCells;
+        if (free != null) {
+            return free.random(random);
+        }
+        for (int i = 0; i < RANDOM_TRIES; i++) {
+            long cell = index(random.nextInt(rows), random.nextInt(columns));
+            if (!isOccupied(cell)) {
+                return cell;
+            }
+        }
+        long start = index(random.nextInt(rows), random.nextInt(columns));
+        for (long i = 0; i < size; i++) {
+            long cell = (start + i < size) ? start + i : start + i - size;
+            if (!isOccupied(cell)) {
+                return cell;
+            }
+        }
+        return NO_CELL;
+    }
+
+    public void clear(long index) {
+        set(index, EMPTY);
+    }
+
+    public boolean isOccupied(long index) {
+        return get(index) != EMPTY;
+    }
+
+    /**
+     * @return the rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the columns
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return number of cells in the grid.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot index of the coordinates, or <code>NO_CELL</code> if the
+     * coordinates are outside of the grid.
+     * @param row
+     * @param column
+     * @return
+     */
+    public long index(int row, int column) {
+        if (row < 0 || row >= rows || column < 0 || column >= columns) {
+            return NO_CELL;
+        }
+        return (long) row * columns + column;
+    }
+
+    public int row(long index) {
+        return (int) (index / columns);
+    }
+
+    public int column(long index) {
+        return (int) (index % columns);
+    }
+
+    /**
+     * Returns the index of the cell next to <code>index</code> in the direction,
+     * or <code>NO_CELL</code> if that would fall off the grid.
+     * @param index
+     * @param direction
+     * @return
+     */
+    public long neighbour(long index, MovementDirection direction) {
+        long column = index % columns + direction.getColumnOffset();
+        if (column < 0 || column >= columns) {
+            return NO_CELL;
+        }
+        long neighbour = index + (long) direction.getRowOffset() * columns
+                + direction.getColumnOffset();
+        if (neighbour < 0 || neighbour >= size) {
+            return NO_CELL;
+        }
+        return neighbour;
+    }
+
+    /**
+     * @param index
+     * @return number of occupied cells among the four around <code>index</code>.
+     */
+    public int occupiedNeighbours(long index) {
+        long column = index % columns;
+        int count = 0;
+        if (column > 0 && isOccupied(index - 1)) {
+            count++;
+        }
+        if (column < columns - 1 && isOccupied(index + 1)) {
+            count++;
+        }
+        if (index >= columns && isOccupied(index - columns)) {
+            count++;
+        }
+        if (index + columns < size && isOccupied(index + columns)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param index
+     * @param other
+     * @return true if the two cells are next to each other.
+     */
+    public boolean isAdjacent(long index, long other) {
+        long distance = index - other;
+        if (distance == columns || distance == -columns) {
+            return true;
+        }
+        return (distance == 1 || distance == -1) 
+            && index / columns == other / columns;
+    }
+
+    /**
+     * Checks if any of the four cells around <code>index</code> is occupied,
+     * not counting the cell <code>ignored</code>.
+     * @param index
+     * @param ignored cell to leave out of the check, usually the mover's own cell.
+     * @return
+     */
+    public boolean isNeighbourOccupied(long index, long ignored) {
+        long column = index % columns;
+        if (column > 0 && index - 1 != ignored && isOccupied(index - 1)) {
+            return true;
+        }
+        if (column < columns - 1 && index + 1 != ignored && isOccupied(index + 1)) {
+            return true;
+        }
+        if (index >= columns && index - columns != ignored && isOccupied(index - columns)) {
+            return true;
+        }
+        if (index + columns < size && index + columns != ignored
+                && isOccupied(index + columns)) {
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,33 @@
+package com.faziz.playarea.grid;
+
+/**
+ * How the play area keeps its occupancy.
+ *
+ * @author faziz
+ */
+public enum GridMode {
+
+    /** One slot per cell, fastest lookups, memory follows the board size. */
+    DENSE {
+        @Override
+        public Grid createGrid(int rows, int columns) {
+            return new DenseGrid(rows, columns);
+        }
+    },
+    /** Only occupied cells are stored, memory follows the number of players. */
+    SPARSE {
+        @Override
+        public Grid createGrid(int rows, int columns) {
+            return new SparseGrid(rows, columns);
+        }
+    },
+    /** One atomic slot per cell, for players applying their own moves. */
+    CONCURRENT {
+        @Override
+        public Grid createGrid(int rows, int columns) {
+            return new ConcurrentGrid(rows, columns);
+        }
+    };
+
+    public abstract Grid createGrid(int rows, int columns);
+}
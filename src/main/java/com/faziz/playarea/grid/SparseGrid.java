@@ -0,0 +1,176 @@
+package com.faziz.playarea.grid;
+
+import java.util.Arrays;
+
+/**
+ * Grid that only stores occupied cells, for large boards with few players.
+ *
+ * Occupied cells are kept in an open addressing hash table from the cell index
+ * to the player id, using linear probing over primitive arrays. Creating the
+ * grid costs nothing per cell, memory follows the number of players.
+ *
+ * Not thread safe, the play area coordinator is the only one writing to it.
+ *
+ * @author faziz
+ */
+public class SparseGrid extends Grid {
+
+    /** Key marking a free table slot, no cell has a negative index. */
+    private static final long FREE = -1;
+    private static final int MINIMUM_CAPACITY = 16;
+
+    /** Cell indexes of the occupied cells, <code>FREE</code> for unused slots. */
+    private long[] keys;
+    /** Player id for the cell index at the same slot in <code>keys</code>. */
+    private int[] values;
+    /** Number of occupied cells. */
+    private int count = 0;
+    /** Table is grown once <code>count</code> reaches this. */
+    private int threshold;
+
+    public SparseGrid(int rows, int columns) {
+        this(rows, columns, MINIMUM_CAPACITY);
+    }
+
+    /**
+     * @param rows
+     * @param columns
+     * @param expectedPlayers number of players to size the table for.
+     */
+    public SparseGrid(int rows, int columns, int expectedPlayers) {
+        super(rows, columns);
+        allocate(tableSizeFor(expectedPlayers));
+    }
+
+    @Override
+    public int get(long index) {
+        int mask = keys.length - 1;
+        for (int slot = hash(index) & mask;; slot = (slot + 1) & mask) {
+            long key = keys[slot];
+            if (key == index) {
+                return values[slot];
+            }
+            if (key == FREE) {
+                return EMPTY;
+            }
+        }
+    }
+
+    @Override
+    public void set(long index, int playerId) {
+        if (playerId == EMPTY) {
+            cellChanged(index, remove(index), EMPTY);
+            return;
+        }
+        int mask = keys.length - 1;
+        int slot = hash(index) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == index) {
+                int previous = values[slot];
+                values[slot] = playerId;
+                cellChanged(index, previous, playerId);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = index;
+        values[slot] = playerId;
+        if (++count >= threshold) {
+            rehash(keys.length * 2);
+        }
+        cellChanged(index, EMPTY, playerId);
+    }
+
+    /**
+     * @return number of occupied cells.
+     */
+    public int getOccupiedCount() {
+        return count;
+    }
+
+    /**
+     * @return number of slots in the table.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Removes the cell from the table, shifting back the entries of its probe
+     * chain so that lookups never need tombstones.
+     * @param index
+     * @return id of the player removed, <code>EMPTY</code> if none.
+     */
+    private int remove(long index) {
+        int mask = keys.length - 1;
+        int slot = hash(index) & mask;
+        while (keys[slot] != index) {
+            if (keys[slot] == FREE) {
+                return EMPTY;
+            }
+            slot = (slot + 1) & mask;
+        }
+        count--;
+        int removed = values[slot];
+
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            // Move the entry into the gap unless its home lies cyclically in (gap, next].
+            boolean reachable = (gap <= next) ? (gap < home && home <= next)
+                    : (gap < home || home <= next);
+            if (!reachable) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = FREE;
+        values[gap] = EMPTY;
+        return removed;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new int[capacity];
+        threshold = capacity / 2;
+    }
+
+    /**
+     * Smallest power of two table keeping the load factor at or below a half.
+     */
+    private static int tableSizeFor(int entries) {
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity / 2 <= entries && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the cell index over the table, neighbouring cells have
+     * neighbouring indexes which would otherwise cluster in the same run.
+     */
+    static int hash(long index) {
+        long h = index * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,172 @@
+package com.faziz.playarea.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append only binary journal of the placements and moves of a match, written
+ * through a memory mapped file of fixed size.
+ *
+ * The file starts with a header of <code>HEADER_SIZE</code> bytes, followed by
+ * records of <code>RECORD_SIZE</code> bytes:
+ * <pre>
+ *  0 long  nano time
+ *  8 long  from cell, Grid.NO_CELL for a placement
+ * 16 long  to cell, Grid.NO_CELL if off the grid
+ * 24 int   player id
+ * 28 byte  record type, PLACED or MOVED, 0 for a slot never written
+ * 29 byte  verdict ordinal, for a move
+ * 30 byte  direction ordinal, for a move
+ * 31 byte  1 if the move was fouled
+ * </pre>
+ * A record costs a slot taken with one atomic increment and a few stores into
+ * the mapping, no locks, objects or system calls, so any thread judging moves
+ * can write it. The operating system writes the pages out on its own. Once the
+ * file is full further records are dropped and counted.
+ *
+ * Numbers are little endian. The record count in the header is only written
+ * by <code>close</code>, after a crash the reader stops at the first slot never
+ * written instead.
+ *
+ * @author faziz
+ */
+public class MoveJournal implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(MoveJournal.class.getName());
+
+    /** First int of the file. */
+    public static final int MAGIC = 0x504c4a31;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 32;
+    /** Records fitting in the one mapping a file can have. */
+    public static final long MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    /** Player put on a cell, on registration or on return to the play. */
+    public static final byte PLACED = 1;
+    /** Move judged, whatever the verdict. */
+    public static final byte MOVED = 2;
+
+    /** Offsets in the header. */
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int ROWS_OFFSET = 8;
+    static final int COLUMNS_OFFSET = 12;
+    static final int COUNT_OFFSET = 16;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final long capacity;
+    /** Next slot to hand out, may run past the capacity. */
+    private final AtomicLong next = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates the journal file, replacing any file there, with room for the
+     * given number of records.
+     * @param path
+     * @param rows rows of the play area.
+     * @param columns columns of the play area.
+     * @param capacity number of records.
+     * @throws IOException
+     */
+    public MoveJournal(File path, int rows, int columns, long capacity) throws IOException {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be from 1 to "
+                + MAX_CAPACITY + " records.");
+        }
+        this.capacity = capacity;
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        long size = HEADER_SIZE + capacity * RECORD_SIZE;
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(ROWS_OFFSET, rows);
+        buffer.putInt(COLUMNS_OFFSET, columns);
+        buffer.putLong(COUNT_OFFSET, 0);
+        logger.log(Level.INFO, "Journal {0} with room for {1} records.",
+            new Object[]{path, capacity});
+    }
+
+    /**
+     * Records a player put on a cell.
+     * @param playerId
+     * @param cell
+     */
+    public void placed(int playerId, long cell) {
+        write(PLACED, playerId, -1, cell, (byte) -1, (byte) -1, false);
+    }
+
+    /**
+     * Records a judged move.
+     * @param playerId
+     * @param from cell before the move.
+     * @param to requested cell.
+     * @param direction ordinal of the direction.
+     * @param verdict ordinal of the verdict.
+     * @param fouled
+     */
+    public void moved(int playerId, long from, long to, int direction, int verdict,
+            boolean fouled) {
+        write(MOVED, playerId, from, to, (byte) direction, (byte) verdict, fouled);
+    }
+
+    private void write(byte type, int playerId, long from, long to, byte direction,
+            byte verdict, boolean fouled) {
+        long slot = next.getAndIncrement();
+        if (slot >= capacity || closed) {
+            return;
+        }
+        int offset = HEADER_SIZE + (int) slot * RECORD_SIZE;
+        buffer.putLong(offset, System.nanoTime());
+        buffer.putLong(offset + 8, from);
+        buffer.putLong(offset + 16, to);
+        buffer.putInt(offset + 24, playerId);
+        buffer.put(offset + 29, verdict);
+        buffer.put(offset + 30, direction);
+        buffer.put(offset + 31, fouled ? (byte) 1 : (byte) 0);
+        // Last, marking the slot as written.
+        buffer.put(offset + 28, type);
+    }
+
+    /**
+     * @return number of records written.
+     */
+    public long getCount() {
+        return Math.min(next.get(), capacity);
+    }
+
+    /**
+     * @return number of records dropped for want of room.
+     */
+    public long getDropped() {
+        return Math.max(0, next.get() - capacity);
+    }
+
+    /**
+     * Writes the record count, forces the file out and closes it. Records
+     * coming in later are dropped.
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.putLong(COUNT_OFFSET, getCount());
+        buffer.force();
+        file.close();
+        if (getDropped() > 0) {
+            logger.log(Level.WARNING, "Journal full, {0} records dropped.", getDropped());
+        }
+    }
+}
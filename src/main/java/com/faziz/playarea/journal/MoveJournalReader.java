@@ -0,0 +1,132 @@
+package com.faziz.playarea.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a <code>MoveJournal</code> file record by record. The reader is a
+ * cursor: <code>next</code> moves it to the next record, whose fields the
+ * getters then return, so reading allocates nothing.
+ *
+ * @author faziz
+ */
+public class MoveJournalReader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int rows;
+    private final int columns;
+    /** Records in the file, written or not. */
+    private final long slots;
+    private long position = -1;
+    private int offset = 0;
+
+    public MoveJournalReader(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        long length = file.length();
+        if (length < MoveJournal.HEADER_SIZE) {
+            file.close();
+            throw new IOException(path + " is not a move journal.");
+        }
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(MoveJournal.MAGIC_OFFSET) != MoveJournal.MAGIC
+                || buffer.getInt(MoveJournal.VERSION_OFFSET) != MoveJournal.VERSION) {
+            file.close();
+            throw new IOException(path + " is not a move journal of version "
+                + MoveJournal.VERSION + ".");
+        }
+        rows = buffer.getInt(MoveJournal.ROWS_OFFSET);
+        columns = buffer.getInt(MoveJournal.COLUMNS_OFFSET);
+        slots = (length - MoveJournal.HEADER_SIZE) / MoveJournal.RECORD_SIZE;
+    }
+
+    /**
+     * Moves to the next record.
+     * @return false at the end of the journal.
+     */
+    public boolean next() {
+        if (position + 1 >= slots) {
+            return false;
+        }
+        int nextOffset = MoveJournal.HEADER_SIZE + (int) (position + 1) * MoveJournal.RECORD_SIZE;
+        if (buffer.get(nextOffset + 28) == 0) {
+            return false;
+        }
+        position++;
+        offset = nextOffset;
+        return true;
+    }
+
+    /**
+     * @return number of the current record, from 0.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public long getNanoTime() {
+        return buffer.getLong(offset);
+    }
+
+    public long getFrom() {
+        return buffer.getLong(offset + 8);
+    }
+
+    public long getTo() {
+        return buffer.getLong(offset + 16);
+    }
+
+    public int getPlayerId() {
+        return buffer.getInt(offset + 24);
+    }
+
+    /**
+     * @return <code>MoveJournal.PLACED</code> or <code>MoveJournal.MOVED</code>.
+     */
+    public byte getType() {
+        return buffer.get(offset + 28);
+    }
+
+    /**
+     * @return ordinal of the verdict of a move.
+     */
+    public int getVerdict() {
+        return buffer.get(offset + 29);
+    }
+
+    /**
+     * @return ordinal of the direction of a move.
+     */
+    public int getDirection() {
+        return buffer.get(offset + 30);
+    }
+
+    public boolean isFouled() {
+        return buffer.get(offset + 31) != 0;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return record count of the header, 0 if the journal was not closed.
+     */
+    public long getRecordedCount() {
+        return buffer.getLong(MoveJournal.COUNT_OFFSET);
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+}
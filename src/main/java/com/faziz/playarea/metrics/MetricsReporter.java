@@ -0,0 +1,59 @@
+package com.faziz.playarea.metrics;
+
+import java.io.PrintStream;
+
+/**
+ * Prints the metrics of a play area as a line of text every interval, on a
+ * daemon thread of its own.
+ *
+ * @author faziz
+ */
+public class MetricsReporter implements Runnable {
+
+    private final PlayAreaMetrics metrics;
+    private final PrintStream out;
+    private final long intervalMillis;
+    private volatile boolean stopped = false;
+    private Thread thread = null;
+
+    /**
+     * @param metrics
+     * @param out stream to print to.
+     * @param intervalMillis
+     */
+    public MetricsReporter(PlayAreaMetrics metrics, PrintStream out, long intervalMillis) {
+        this.metrics = metrics;
+        this.out = out;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this, "metrics");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the reporting, printing the metrics a last time.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public void run() {
+        while (!stopped) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException ex) {
+                stopped = true;
+            }
+            metrics.sample();
+            out.println(metrics);
+        }
+    }
+}
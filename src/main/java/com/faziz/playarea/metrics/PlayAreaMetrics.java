@@ -0,0 +1,227 @@
+package com.faziz.playarea.metrics;
+
+import com.faziz.playarea.MoveVerdict;
+import com.faziz.playarea.PlayArea;
+import com.faziz.playarea.channel.CoalescingChannel;
+import com.faziz.playarea.channel.RequestChannel;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts the verdicts of a play area and the latency from a move request to
+ * the player being told its verdict.
+ *
+ * The play area records into it on every move when set with
+ * <code>PlayArea.setMetrics</code>. Counters are striped
+ * <code>LongAdder</code>s and the latencies go to a 
+ * <code>LatencyHistogram</code>, so recording takes no locks and can stay on.
+ * The queue depth, shed requests and player counts are read from the play
+ * area when asked.
+ *
+ * @author faziz
+ */
+public class PlayAreaMetrics implements PlayAreaMetricsMBean {
+
+    private static final Logger logger = Logger.getLogger(PlayAreaMetrics.class.getName());
+
+    private final PlayArea playArea;
+    /** Verdict counts by ordinal. */
+    private final LongAdder[] verdicts = new LongAdder[MoveVerdict.values().length];
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final long created = System.nanoTime();
+    /** Moves and time of the last sample, for the rate. */
+    private long sampledMoves = 0;
+    private long sampledAt = created;
+    private volatile double movesPerSecond = -1;
+    private ObjectName objectName = null;
+
+    public PlayAreaMetrics(PlayArea playArea) {
+        this.playArea = playArea;
+        for (int i = 0; i < verdicts.length; i++) {
+            verdicts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param verdict of a judged move.
+     */
+    public void recordVerdict(MoveVerdict verdict) {
+        verdicts[verdict.ordinal()].increment();
+    }
+
+    /**
+     * @param nanos from the request to the player being told the verdict.
+     */
+    public void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * Takes the moves per second since the previous sample. Called by the
+     * reporter on each interval.
+     */
+    public synchronized void sample() {
+        long now = System.nanoTime();
+        long moves = getMoves();
+        if (now > sampledAt) {
+            movesPerSecond = (moves - sampledMoves) * 1e9 / (now - sampledAt);
+        }
+        sampledMoves = moves;
+        sampledAt = now;
+    }
+
+    public long getMoves() {
+        long moves = 0;
+        for (LongAdder verdict : verdicts) {
+            moves += verdict.sum();
+        }
+        return moves;
+    }
+
+    public long getAccepted() {
+        return verdicts[MoveVerdict.ACCEPTED.ordinal()].sum();
+    }
+
+    public long getFouled() {
+        return verdicts[MoveVerdict.FOULED.ordinal()].sum();
+    }
+
+    public long getEvictions() {
+        return verdicts[MoveVerdict.EVICTED.ordinal()].sum();
+    }
+
+    public long getRejected() {
+        return verdicts[MoveVerdict.REJECTED.ordinal()].sum();
+    }
+
+    public long getIgnored() {
+        return verdicts[MoveVerdict.IGNORED.ordinal()].sum();
+    }
+
+    /**
+     * @return moves per second between the last two samples, since the start
+     * if never sampled.
+     */
+    public double getMovesPerSecond() {
+        double rate = movesPerSecond;
+        if (rate < 0) {
+            long elapsed = System.nanoTime() - created;
+            return elapsed == 0 ? 0 : getMoves() * 1e9 / elapsed;
+        }
+        return rate;
+    }
+
+    public int getQueueDepth() {
+        return playArea.getQueueDepth();
+    }
+
+    public long getShedRequests() {
+        RequestChannel channel = playArea.getChannel();
+        return (channel instanceof CoalescingChannel) 
+            ? ((CoalescingChannel) channel).getShedCount() : 0;
+    }
+
+    public long getCoalescedRequests() {
+        RequestChannel channel = playArea.getChannel();
+        return (channel instanceof CoalescingChannel) 
+            ? ((CoalescingChannel) channel).getCoalescedCount() : 0;
+    }
+
+    public int getActivePlayers() {
+        return playArea.getRegistry().getActiveCount();
+    }
+
+    public int getEvictedPlayers() {
+        return playArea.getRegistry().getEvictedCount();
+    }
+
+    public long getLatencyCount() {
+        return latency.getCount();
+    }
+
+    public double getLatencyP50Micros() {
+        return latency.getValueAtPercentile(50) / 1000.0;
+    }
+
+    public double getLatencyP90Micros() {
+        return latency.getValueAtPercentile(90) / 1000.0;
+    }
+
+    public double getLatencyP99Micros() {
+        return latency.getValueAtPercentile(99) / 1000.0;
+    }
+
+    public double getLatencyP999Micros() {
+        return latency.getValueAtPercentile(99.9) / 1000.0;
+    }
+
+    public double getLatencyMaxMicros() {
+        return latency.getMax() / 1000.0;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public synchronized void reset() {
+        for (LongAdder verdict : verdicts) {
+            verdict.reset();
+        }
+        latency.reset();
+        sampledMoves = 0;
+        sampledAt = System.nanoTime();
+        movesPerSecond = -1;
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server, under
+     * <code>com.faziz.playarea:type=PlayArea,name=</code> the given name.
+     * @param name
+     */
+    public synchronized void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("com.faziz.playarea:type=PlayArea,name=" 
+                + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+        } catch (JMException ex) {
+            logger.log(Level.WARNING, "Could not register the metrics MBean.", ex);
+            objectName = null;
+        }
+    }
+
+    /**
+     * Takes the metrics off the MBean server, if registered.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ex) {
+            logger.log(Level.WARNING, "Could not unregister the metrics MBean.", ex);
+        }
+        objectName = null;
+    }
+
+    /**
+     * @return one line with all the metrics, as dumped by the reporter.
+     */
+    @Override
+    public String toString() {
+        return String.format("moves %d (%.0f/s) accepted %d fouled %d evicted %d rejected %d"
+            + " ignored %d | queue %d shed %d coalesced %d | players %d in play, %d evicted"
+            + " | latency us p50 %.1f p90 %.1f p99 %.1f p99.9 %.1f max %.1f",
+            getMoves(), getMovesPerSecond(), getAccepted(), getFouled(), getEvictions(),
+            getRejected(), getIgnored(), getQueueDepth(), getShedRequests(),
+            getCoalescedRequests(), getActivePlayers(),
+            getEvictedPlayers(), getLatencyP50Micros(), getLatencyP90Micros(),
+            getLatencyP99Micros(), getLatencyP999Micros(), getLatencyMaxMicros());
+    }
+}
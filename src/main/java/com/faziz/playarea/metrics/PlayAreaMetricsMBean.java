@@ -0,0 +1,56 @@
+package com.faziz.playarea.metrics;
+
+/**
+ * Management interface of <code>PlayAreaMetrics</code>, as seen in JMX
+ * consoles.
+ *
+ * @author faziz
+ */
+public interface PlayAreaMetricsMBean {
+
+    /** @return moves judged, whatever the verdict. */
+    long getMoves();
+
+    long getAccepted();
+
+    long getFouled();
+
+    /** @return moves ending in the player's eviction. */
+    long getEvictions();
+
+    long getRejected();
+
+    long getIgnored();
+
+    /** @return moves judged per second over the last reporting interval. */
+    double getMovesPerSecond();
+
+    /** @return requests waiting for the coordinator. */
+    int getQueueDepth();
+
+    /** @return requests shed by a coalescing channel, dropped or rejected. */
+    long getShedRequests();
+
+    /** @return requests that took the place of an earlier one of the player. */
+    long getCoalescedRequests();
+
+    int getActivePlayers();
+
+    int getEvictedPlayers();
+
+    /** @return verdicts whose latency was recorded. */
+    long getLatencyCount();
+
+    double getLatencyP50Micros();
+
+    double getLatencyP90Micros();
+
+    double getLatencyP99Micros();
+
+    double getLatencyP999Micros();
+
+    double getLatencyMaxMicros();
+
+    /** Starts the counts and latencies over. */
+    void reset();
+}
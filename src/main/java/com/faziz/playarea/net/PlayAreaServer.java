@@ -0,0 +1,454 @@
+package com.faziz.playarea.net;
+
+import com.faziz.playarea.MoveVerdict;
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.PlayArea;
+import com.faziz.playarea.Player;
+import com.faziz.playarea.Referee;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lets remote clients drive players of a play area over TCP, in the frames of
+ * <code>Protocol</code>.
+ *
+ * One thread runs a selector over all the connections. Reads go to a single
+ * buffer and every whole frame in it is handled at once, so a client can
+ * pipeline as many requests as it likes. A <code>REGISTER</code> places a new
+ * player with <code>PlayArea.registerPlayer</code>, a <code>MOVE</code> is
+ * handed to <code>PlayArea.requestMoveAsync</code> and never waits. The
+ * coordinator completes a batch of verdicts at a time, each appends its frame
+ * to the outbox of its connection and queues the connection for a flush. The
+ * selector is woken once for all of them and writes each outbox with a single
+ * write.
+ *
+ * A connection with <code>MAX_BACKLOG</code> moves awaiting their verdict and
+ * answers awaiting the write is not read from until half of them are written,
+ * which leaves a client too far ahead, or not reading its answers, to TCP
+ * flow control. The moves of a player are judged and answered in the order
+ * they were sent. The players of a closed connection are taken out of the
+ * play.
+ *
+ * The match starts once <code>minPlayers</code> players are registered. Moves
+ * made before that wait in the request channel.
+ *
+ * @author faziz
+ */
+public class PlayAreaServer implements Runnable, Closeable {
+
+    private static final Logger logger = Logger.getLogger(PlayAreaServer.class.getName());
+    private static final MovementDirection[] DIRECTIONS = MovementDirection.values();
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    /** Frames an outbox starts with room for, it grows as needed. */
+    private static final int OUTBOX_FRAMES = 8;
+    /** 
+     * Moves of a connection awaiting their verdict plus answers not written
+     * yet, before it is read from no more.
+     */
+    private static final int MAX_BACKLOG = 1024;
+    private static final int BACKLOG = 4096;
+
+    private final PlayArea playArea;
+    private final Referee referee;
+    private final int minPlayers;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    /** Shared by all the connections, only used by the selector thread. */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    /** Connections with frames to write. */
+    private final Queue<Connection> flushQueue = new ConcurrentLinkedQueue<Connection>();
+    /** Set once the selector has been woken for the flush queue. */
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    /** Connection of each player id, only used by the selector thread. */
+    private final List<Connection> owners = new ArrayList<Connection>();
+    private final LongAdder framesIn = new LongAdder();
+    private final LongAdder framesOut = new LongAdder();
+    private volatile int connectionCount = 0;
+    private int registeredCount = 0;
+    private boolean activated = false;
+    private volatile boolean running = false;
+    private Thread thread = null;
+
+    /**
+     * @param playArea play area with <code>PlayerRuntime.EXTERNAL</code>, not
+     * activated yet.
+     * @param referee
+     * @param address
+     * @param minPlayers players registered before the match starts.
+     * @throws IOException
+     */
+    public PlayAreaServer(PlayArea playArea, Referee referee, InetSocketAddress address,
+            int minPlayers) throws IOException {
+        this.playArea = playArea;
+        this.referee = referee;
+        this.minPlayers = minPlayers;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, BACKLOG);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Starts the selector thread.
+     */
+    public synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this, "playarea-server");
+            thread.start();
+            logger.log(Level.INFO, "Listening on {0}.", 
+                serverChannel.socket().getLocalSocketAddress());
+        }
+    }
+
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                wakeupPending.set(false);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+                Connection connection;
+                while ((connection = flushQueue.poll()) != null) {
+                    connection.queued.set(false);
+                    flush(connection);
+                }
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Selector failed.", ex);
+                running = false;
+            }
+        }
+        closeAll();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connectionCount++;
+        }
+    }
+
+    /**
+     * Reads what the connection has sent and handles every whole frame, the
+     * bytes of a partial frame are kept for the next read.
+     */
+    private void read(Connection connection) {
+        readBuffer.clear();
+        readBuffer.put(connection.partial, 0, connection.partialLength);
+        int read;
+        try {
+            read = connection.channel.read(readBuffer);
+        } catch (IOException ex) {
+            read = -1;
+        }
+        if (read < 0) {
+            close(connection);
+            return;
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= Protocol.FRAME_SIZE && !connection.closed) {
+            int frame = readBuffer.position();
+            handle(connection, readBuffer.get(frame + Protocol.TYPE_OFFSET),
+                readBuffer.get(frame + Protocol.CODE_OFFSET),
+                readBuffer.getInt(frame + Protocol.PLAYER_OFFSET),
+                readBuffer.getInt(frame + Protocol.SEQUENCE_OFFSET));
+            readBuffer.position(frame + Protocol.FRAME_SIZE);
+        }
+        connection.partialLength = readBuffer.remaining();
+        readBuffer.get(connection.partial, 0, connection.partialLength);
+        if (!connection.closed && connection.backlog() >= MAX_BACKLOG) {
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    private void handle(Connection connection, byte type, byte code, int playerId,
+            int sequence) {
+        framesIn.increment();
+        if (type == Protocol.REGISTER) {
+            register(connection, sequence);
+        } else if (type == Protocol.MOVE) {
+            move(connection, code, playerId, sequence);
+        } else {
+            logger.log(Level.WARNING, "Closing a connection sending frames of type {0}.", type);
+            close(connection);
+        }
+    }
+
+    private void register(Connection connection, int sequence) {
+        Player player = new Player(playArea, referee, "Remote" + registeredCount);
+        try {
+            playArea.registerPlayer(player);
+        } catch (IllegalStateException ex) {
+            connection.append(Protocol.REGISTERED, (byte) 0, 0, sequence, -1);
+            requestFlush(connection);
+            return;
+        }
+        int id = player.getId();
+        while (owners.size() <= id) {
+            owners.add(null);
+        }
+        owners.set(id, connection);
+        connection.players.add(player);
+        connection.append(Protocol.REGISTERED, (byte) 0, id, sequence, player.getCellIndex());
+        requestFlush(connection);
+        if (++registeredCount >= minPlayers && !activated) {
+            activated = true;
+            playArea.activate();
+        }
+    }
+
+    private void move(final Connection connection, byte code, int playerId,
+            final int sequence) {
+        if (playerId <= 0 || playerId >= owners.size() || owners.get(playerId) != connection
+                || code < 0 || code >= DIRECTIONS.length) {
+            connection.append(Protocol.VERDICT, (byte) MoveVerdict.IGNORED.ordinal(), playerId,
+                sequence, -1);
+            requestFlush(connection);
+            return;
+        }
+        final Player player = playArea.getRegistry().getPlayer(playerId);
+        connection.inFlight.incrementAndGet();
+        playArea.requestMoveAsync(player, DIRECTIONS[code]).whenComplete(
+            new BiConsumer<MoveVerdict, Throwable>() {
+                public void accept(MoveVerdict verdict, Throwable failure) {
+                    answer(connection, player, sequence, verdict);
+                }
+            });
+    }
+
+    /**
+     * Appends the verdict to the outbox of the connection, on the thread
+     * completing the move, usually the coordinator.
+     * @param verdict null if the move was not taken.
+     */
+    private void answer(Connection connection, Player player, int sequence, MoveVerdict verdict) {
+        int id = player.getId();
+        long cell = player.getCellIndex();
+        connection.append(Protocol.VERDICT,
+            (verdict == null) ? Protocol.OVERLOADED : (byte) verdict.ordinal(), id, sequence, cell);
+        if (verdict == MoveVerdict.EVICTED) {
+            connection.append(Protocol.EVICTED,
+                (byte) playArea.getRegistry().getEvictionCount(id), id, sequence, cell);
+        }
+        connection.inFlight.decrementAndGet();
+        requestFlush(connection);
+    }
+
+    /**
+     * Queues the connection for a flush by the selector thread, waking it up
+     * unless it is awake already.
+     */
+    private void requestFlush(Connection connection) {
+        if (connection.queued.compareAndSet(false, true)) {
+            flushQueue.add(connection);
+            if (Thread.currentThread() != thread && wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Writes what the outbox of the connection holds, watching for the socket
+     * to take more if it can not take it all now.
+     */
+    private void flush(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        try {
+            while (true) {
+                if (!connection.flushing.hasRemaining() && !connection.swap()) {
+                    break;
+                }
+                int written = connection.channel.write(connection.flushing);
+                framesOut.add(written / Protocol.FRAME_SIZE);
+                if (connection.flushing.hasRemaining()) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            close(connection);
+            return;
+        }
+        int ops = SelectionKey.OP_READ;
+        if (connection.flushing.hasRemaining()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (connection.backlog() >= MAX_BACKLOG / 2
+                && (connection.key.interestOps() & SelectionKey.OP_READ) == 0) {
+            ops &= ~SelectionKey.OP_READ;
+        }
+        if (ops != connection.key.interestOps()) {
+            connection.key.interestOps(ops);
+        }
+    }
+
+    private void close(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ex) {
+            logger.log(Level.FINE, "Could not close a connection.", ex);
+        }
+        connectionCount--;
+        for (Player player : connection.players) {
+            owners.set(player.getId(), null);
+            playArea.removePlayer(player);
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Connection closed, {0} players taken out.",
+                connection.players.size());
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                close((Connection) key.attachment());
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not close the server.", ex);
+        }
+    }
+
+    /**
+     * Stops the selector thread and closes all the connections.
+     */
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * @return port the server listens on.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public long getFramesIn() {
+        return framesIn.sum();
+    }
+
+    public long getFramesOut() {
+        return framesOut.sum();
+    }
+
+    /**
+     * A client connection. Frames are appended to <code>pending</code> under
+     * the connection's lock by any thread, the selector thread swaps it for
+     * <code>flushing</code> once that is written out.
+     */
+    private static class Connection {
+
+        final SocketChannel channel;
+        SelectionKey key = null;
+        /** Bytes of a frame not read whole yet. */
+        final byte[] partial = new byte[Protocol.FRAME_SIZE];
+        int partialLength = 0;
+        /** Frames appended since the last swap, in write mode. */
+        private ByteBuffer pending = ByteBuffer.allocate(OUTBOX_FRAMES * Protocol.FRAME_SIZE);
+        /** Frames being written, in read mode, only used by the selector thread. */
+        ByteBuffer flushing = ByteBuffer.allocate(OUTBOX_FRAMES * Protocol.FRAME_SIZE);
+        /** Set while the connection is in the flush queue. */
+        final AtomicBoolean queued = new AtomicBoolean();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final List<Player> players = new ArrayList<Player>();
+        volatile boolean closed = false;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            flushing.flip();
+        }
+
+        synchronized void append(byte type, byte code, int player, int sequence, long cell) {
+            if (pending.remaining() < Protocol.FRAME_SIZE) {
+                ByteBuffer grown = ByteBuffer.allocate(pending.capacity() * 2);
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            Protocol.put(pending, type, code, player, sequence, cell);
+        }
+
+        /**
+         * @return moves awaiting their verdict plus frames not written yet,
+         * on the selector thread.
+         */
+        int backlog() {
+            int appended;
+            synchronized (this) {
+                appended = pending.position();
+            }
+            return inFlight.get() + (appended + flushing.remaining()) / Protocol.FRAME_SIZE;
+        }
+
+        /**
+         * Takes the frames appended so far for writing, the written buffer
+         * takes the new ones.
+         * @return false if there were none.
+         */
+        synchronized boolean swap() {
+            if (pending.position() == 0) {
+                return false;
+            }
+            ByteBuffer written = flushing;
+            flushing = pending;
+            flushing.flip();
+            written.clear();
+            pending = written;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.faziz.playarea.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary protocol between remote players and a <code>PlayAreaServer</code>.
+ *
+ * Every message is a frame of <code>FRAME_SIZE</code> bytes, in network byte
+ * order:
+ * <pre>
+ * 0  byte type
+ * 1  byte code      direction of a move, verdict, eviction count
+ * 2  short          zero
+ * 4  int  player    id handed out by the server
+ * 8  int  sequence  chosen by the client, echoed in the answer
+ * 12 int            zero
+ * 16 long cell      cell of the player after the message
+ * </pre>
+ * A client may send any number of frames without waiting for the answers.
+ * Each <code>REGISTER</code> is answered by a <code>REGISTERED</code>, each
+ * <code>MOVE</code> by a <code>VERDICT</code>, followed by an
+ * <code>EVICTED</code> if the move took the player out of the play. The moves
+ * of a player are answered in the order they were sent, answers to the moves
+ * of different players may come in any order.
+ *
+ * @author faziz
+ */
+public final class Protocol {
+
+    public static final int FRAME_SIZE = 24;
+
+    /** Client asks for a new player. */
+    public static final byte REGISTER = 1;
+    /** Player placed, or player 0 if there was no room left. */
+    public static final byte REGISTERED = 2;
+    /** Client asks to move its player, the code is the direction ordinal. */
+    public static final byte MOVE = 3;
+    /** Outcome of a move, the code is the verdict ordinal or <code>OVERLOADED</code>. */
+    public static final byte VERDICT = 4;
+    /** Player taken out of the play, the code is its eviction count. */
+    public static final byte EVICTED = 5;
+
+    /** Verdict code of a move the server had no room for, the player stays put. */
+    public static final byte OVERLOADED = (byte) 0xff;
+
+    /** Offsets in a frame. */
+    public static final int TYPE_OFFSET = 0;
+    public static final int CODE_OFFSET = 1;
+    public static final int PLAYER_OFFSET = 4;
+    public static final int SEQUENCE_OFFSET = 8;
+    public static final int CELL_OFFSET = 16;
+
+    private Protocol() {
+    }
+
+    /**
+     * Writes a frame at the buffer's position and moves past it.
+     * @param buffer
+     * @param type
+     * @param code
+     * @param player
+     * @param sequence
+     * @param cell
+     */
+    public static void put(ByteBuffer buffer, byte type, byte code, int player, int sequence,
+            long cell) {
+        buffer.put(type);
+        buffer.put(code);
+        buffer.putShort((short) 0);
+        buffer.putInt(player);
+        buffer.putInt(sequence);
+        buffer.putInt(0);
+        buffer.putLong(cell);
+    }
+}
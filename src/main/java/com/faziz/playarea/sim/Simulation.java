@@ -0,0 +1,273 @@
+package com.faziz.playarea.sim;
+
+import com.faziz.playarea.MatchListener;
+import com.faziz.playarea.MatchSnapshot;
+import com.faziz.playarea.PlayArea;
+import com.faziz.playarea.Player;
+import com.faziz.playarea.PlayerRuntime;
+import com.faziz.playarea.Referee;
+import com.faziz.playarea.TickEngine;
+import com.faziz.playarea.VirtualTimeScheduler;
+import com.faziz.playarea.grid.GridMode;
+import com.faziz.playarea.journal.MoveJournal;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Plays a whole match headless, as a discrete event simulation.
+ *
+ * The players keep their usual delays, but on the virtual clock of a
+ * <code>VirtualTimeScheduler</code> driven by the calling thread, and every
+ * move is judged right when it is requested. With a seeded random source the
+ * same seed gives the same match, move for move, as fast as the CPU allows.
+ *
+ * With <code>useTicks</code> the players move in lock step on a 
+ * <code>TickEngine</code> instead, just as repeatable whatever the number of
+ * threads.
+ *
+ * @author faziz
+ */
+public class Simulation {
+
+    private static final Logger logger = Logger.getLogger(Simulation.class.getName());
+    private static final int NUMBER_OF_PLAYERS = 1000;
+    /** Records the journal has room for. */
+    private static final long JOURNAL_CAPACITY = 1 << 24;
+    /** Virtual time limit in milliseconds, unless given otherwise: a day. */
+    private static final long DEFAULT_TIME_LIMIT = 24L * 60 * 60 * 1000;
+
+    private final PlayArea playArea;
+    private final VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    private final List<Player> players;
+    private final Referee referee;
+    private final long seed;
+    private TickEngine tickEngine = null;
+    private boolean finished = false;
+    private Player winner = null;
+
+    /**
+     * @param rows
+     * @param columns
+     * @param gridMode
+     * @param numberOfPlayers
+     * @param seed seed of the random placements and directions.
+     */
+    public Simulation(int rows, int columns, GridMode gridMode, int numberOfPlayers, 
+            long seed) {
+        this(rows, columns, gridMode, numberOfPlayers, seed, null);
+    }
+
+    /**
+     * @param rows
+     * @param columns
+     * @param gridMode
+     * @param numberOfPlayers
+     * @param seed seed of the random placements and directions.
+     * @param journal journal recording the match, null for none.
+     */
+    public Simulation(int rows, int columns, GridMode gridMode, int numberOfPlayers, 
+            long seed, MoveJournal journal) {
+        playArea = new PlayArea(rows, columns, gridMode);
+        playArea.setJournal(journal);
+        playArea.setScheduler(scheduler);
+        playArea.setRandom(new Random(seed));
+        playArea.setPlayerRuntime(PlayerRuntime.TIMER);
+        playArea.setSynchronousMoves(true);
+        playArea.setMatchListener(new MatchListener() {
+            public void matchFinished(PlayArea playArea, Player winner) {
+                finished = true;
+                Simulation.this.winner = winner;
+            }
+        });
+        this.seed = seed;
+        referee = new Referee(playArea);
+        playArea.setReferee(referee);
+
+        players = new ArrayList<Player>(numberOfPlayers);
+        for (int i = 0; i < numberOfPlayers; i++) {
+            players.add(new Player(playArea, referee, "Jhon" + i));
+        }
+        playArea.registerPlayers(players);
+    }
+
+    /**
+     * Moves the players in ticks, in parallel on the pool, instead of on their
+     * own timers. To be called before <code>run</code>.
+     * @param pool
+     */
+    public void useTicks(ForkJoinPool pool) {
+        playArea.setPlayerRuntime(PlayerRuntime.EXTERNAL);
+        tickEngine = new TickEngine(playArea, referee, pool, seed);
+    }
+
+    /**
+     * Plays the match until it is over, or the virtual clock passes the limit.
+     * @param timeLimit virtual time limit in milliseconds.
+     * @return true if the match is over.
+     */
+    public boolean run(long timeLimit) {
+        playArea.activate();
+        playArea.go();
+        if (tickEngine != null) {
+            tickEngine.run(timeLimit / TickEngine.TICK_MILLIS);
+        } else {
+            scheduler.run(timeLimit);
+        }
+        if (!finished && playArea.getJournal() != null) {
+            // Over the time limit, the play area will not close it.
+            try {
+                playArea.getJournal().close();
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Could not close the journal.", ex);
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * @return the tick engine, null unless <code>useTicks</code> was called.
+     */
+    public TickEngine getTickEngine() {
+        return tickEngine;
+    }
+
+    /**
+     * @return the winner, null if nobody won or the match is not over.
+     */
+    public Player getWinner() {
+        return winner;
+    }
+
+    /**
+     * @return virtual time reached, in milliseconds.
+     */
+    public long getTime() {
+        return scheduler.getTime();
+    }
+
+    /**
+     * @return number of player actions run.
+     */
+    public long getTaskCount() {
+        return scheduler.getTaskCount();
+    }
+
+    public PlayArea getPlayArea() {
+        return playArea;
+    }
+
+    /**
+     * Sums up the state of the match, the cell of every player still in the
+     * play. Two runs with the same seed end with the same checksum.
+     * @return checksum of the final state.
+     */
+    public long getChecksum() {
+        long checksum = 1125899906842597L;
+        for (Player player : players) {
+            long cell = playArea.isRegistered(player) ? player.getCellIndex() : -1;
+            checksum = 31 * checksum + player.getId();
+            checksum = 31 * checksum + cell;
+        }
+        return 31 * checksum + scheduler.getTime();
+    }
+
+    public static void main(String[] args) {
+        Options options = new Options();
+        options.addOption("r", "rows", true, "rows of the play area, default "
+                + PlayArea.DEFAULT_MATRIX_SIZE);
+        options.addOption("c", "columns", true, "columns of the play area, default "
+                + PlayArea.DEFAULT_MATRIX_SIZE);
+        options.addOption("p", "players", true, "number of players, default "
+                + NUMBER_OF_PLAYERS);
+        options.addOption("g", "grid", true, "grid mode, dense or sparse, default dense");
+        options.addOption("s", "seed", true, "random seed, default 1");
+        options.addOption("l", "limit", true, "virtual time limit in milliseconds, default "
+                + DEFAULT_TIME_LIMIT);
+        options.addOption("t", "ticks", false, 
+                "move the players in lock step ticks, in parallel");
+        options.addOption("n", "threads", true, "threads for the ticks, default "
+                + "the number of processors");
+        options.addOption("j", "journal", true, 
+                "record the placements and moves in a binary journal file");
+        options.addOption("f", "snapshot", true, 
+                "write a snapshot of the players to the file at the end");
+        options.addOption("h", "help", false, "print this message");
+
+        CommandLine line;
+        try {
+            line = new PosixParser().parse(options, args);
+        } catch (ParseException ex) {
+            System.err.println(ex.getMessage());
+            new HelpFormatter().printHelp("simulation", options);
+            return;
+        }
+        if (line.hasOption("h")) {
+            new HelpFormatter().printHelp("simulation", options);
+            return;
+        }
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        int rows = Integer.parseInt(line.getOptionValue("r",
+            String.valueOf(PlayArea.DEFAULT_MATRIX_SIZE)));
+        int columns = Integer.parseInt(line.getOptionValue("c",
+            String.valueOf(PlayArea.DEFAULT_MATRIX_SIZE)));
+        int numberOfPlayers = Integer.parseInt(line.getOptionValue("p",
+            String.valueOf(NUMBER_OF_PLAYERS)));
+        GridMode gridMode = GridMode.valueOf(line.getOptionValue("g", 
+            GridMode.DENSE.name()).toUpperCase());
+        long seed = Long.parseLong(line.getOptionValue("s", "1"));
+        long timeLimit = Long.parseLong(line.getOptionValue("l", 
+            String.valueOf(DEFAULT_TIME_LIMIT)));
+
+        MoveJournal journal = null;
+        if (line.hasOption("j")) {
+            try {
+                journal = new MoveJournal(new File(line.getOptionValue("j")), rows, columns, 
+                    JOURNAL_CAPACITY);
+            } catch (IOException ex) {
+                System.err.println("Could not create the journal: " + ex.getMessage());
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        Simulation simulation = new Simulation(rows, columns, gridMode, numberOfPlayers, seed,
+            journal);
+        if (line.hasOption("t")) {
+            int threads = Integer.parseInt(line.getOptionValue("n", 
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+            simulation.useTicks(new ForkJoinPool(threads));
+        }
+        boolean over = simulation.run(timeLimit);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        System.out.println((over ? "Match over, winner " + simulation.getWinner() 
+            : "Time limit reached, " + simulation.getPlayArea().getPlayerCount() 
+                + " players left"));
+        System.out.println("Virtual time " + simulation.getTime() + " ms, " 
+            + simulation.getTaskCount() + " player actions, " + elapsed + " ms wall clock.");
+        if (simulation.getTickEngine() != null) {
+            System.out.println(simulation.getTickEngine().getTickCount() + " ticks, " 
+                + (long) simulation.getTickEngine().getTicksPerSecond() + " ticks/s.");
+        }
+        System.out.println("Checksum " + Long.toHexString(simulation.getChecksum()));
+        if (line.hasOption("f")) {
+            try {
+                MatchSnapshot.take(simulation.getPlayArea(), new File(line.getOptionValue("f")));
+            } catch (IOException ex) {
+                System.err.println("Could not write the snapshot: " + ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.faziz.playarea.util;
+
+import com.faziz.playarea.Arena;
+import com.faziz.playarea.ArenaManager;
+import com.faziz.playarea.Player;
+import com.faziz.playarea.grid.GridMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs many matches at once in one <code>ArenaManager</code> and prints every
+ * second how many are running and finished, with the threads and heap in use.
+ * The arenas still running at the end are closed.
+ *
+ * Usage: ArenaLoad [arenas size players threads seconds]
+ *
+ * @author faziz
+ */
+public class ArenaLoad {
+
+    public static void main(String[] args) throws InterruptedException {
+        int numberOfArenas = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int numberOfPlayers = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) 
+            : Runtime.getRuntime().availableProcessors();
+        long seconds = args.length > 4 ? Long.parseLong(args[4]) : 30;
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        ArenaManager manager = new ArenaManager(threads, threads);
+        List<Arena> arenas = new ArrayList<Arena>(numberOfArenas);
+        for (int a = 0; a < numberOfArenas; a++) {
+            Arena arena = manager.createArena("arena-" + a, size, size, GridMode.DENSE);
+            List<Player> players = new ArrayList<Player>(numberOfPlayers);
+            for (int i = 0; i < numberOfPlayers; i++) {
+                players.add(new Player(arena.getPlayArea(), arena.getReferee(), "Jhon" + i));
+            }
+            arena.getPlayArea().registerPlayers(players);
+            arenas.add(arena);
+        }
+        for (Arena arena : arenas) {
+            arena.start();
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        for (long s = 1; s <= seconds && manager.getArenaCount() > 0; s++) {
+            Thread.sleep(1000);
+            System.out.println(s + "s: " + manager.getArenaCount() + " running, "
+                + manager.getFinishedCount() + " finished, " + Thread.activeCount() 
+                + " threads, " + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024)
+                + " MB heap");
+        }
+        manager.shutdown();
+        System.out.println(manager.getFinishedCount() + " matches over, " 
+            + manager.getClosedCount() + " closed early, " + manager.getArenaCount() 
+            + " left running.");
+    }
+}
@@ -0,0 +1,89 @@
+package com.faziz.playarea.util;
+
+import com.faziz.playarea.MatchListener;
+import com.faziz.playarea.MoveVerdict;
+import com.faziz.playarea.PlayArea;
+import com.faziz.playarea.Player;
+import com.faziz.playarea.PlayerRuntime;
+import com.faziz.playarea.Referee;
+import com.faziz.playarea.channel.BlockingQueueChannel;
+import com.faziz.playarea.grid.GridMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drives every player of a match through <code>PlayArea.requestMoveAsync</code>
+ * with no threads of its own: each verdict makes the player's next request,
+ * from the coordinator thread, so all the players always have a move in
+ * flight. Prints the moves per second every second.
+ *
+ * Usage: AsyncLoad [size players seconds]
+ *
+ * @author faziz
+ */
+public class AsyncLoad {
+
+    public static void main(String[] args) throws InterruptedException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int numberOfPlayers = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        final PlayArea playArea = new PlayArea(size, size, GridMode.DENSE);
+        Referee referee = new Referee(playArea);
+        playArea.setReferee(referee);
+        playArea.setPlayerRuntime(PlayerRuntime.EXTERNAL);
+        // Room for a move of every player, so a request is never turned away.
+        playArea.setChannel(new BlockingQueueChannel(numberOfPlayers, false));
+        playArea.setBatchSize(256);
+        playArea.setMatchListener(new MatchListener() {
+            public void matchFinished(PlayArea playArea, Player winner) {
+            }
+        });
+        List<Player> players = new ArrayList<Player>(numberOfPlayers);
+        for (int i = 0; i < numberOfPlayers; i++) {
+            players.add(new Player(playArea, referee, "Jhon" + i));
+        }
+        playArea.registerPlayers(players);
+        playArea.activate();
+
+        final LongAdder verdicts = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final AtomicBoolean stopped = new AtomicBoolean();
+        for (final Player player : players) {
+            BiConsumer<MoveVerdict, Throwable> next = new BiConsumer<MoveVerdict, Throwable>() {
+                public void accept(MoveVerdict verdict, Throwable failure) {
+                    if (failure != null) {
+                        failures.increment();
+                        return;
+                    }
+                    verdicts.increment();
+                    if (verdict != MoveVerdict.IGNORED && verdict != MoveVerdict.EVICTED
+                            && !stopped.get()) {
+                        playArea.requestMoveAsync(player, player.getMovementDirection())
+                            .whenComplete(this);
+                    }
+                }
+            };
+            playArea.requestMoveAsync(player, player.getMovementDirection()).whenComplete(next);
+        }
+
+        long last = 0;
+        for (long s = 1; s <= seconds && !playArea.isFinished(); s++) {
+            Thread.sleep(1000);
+            long total = verdicts.sum();
+            System.out.println(s + "s: " + (total - last) + " verdicts/s, "
+                + playArea.getPlayerCount() + " players in the play, "
+                + playArea.getQueueDepth() + " waiting.");
+            last = total;
+        }
+        stopped.set(true);
+        System.out.println(verdicts.sum() + " verdicts, " + failures.sum() + " requests failed.");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,83 @@
+package com.faziz.playarea.util;
+
+import com.faziz.playarea.MoveVerdict;
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.journal.MoveJournal;
+import com.faziz.playarea.journal.MoveJournalReader;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Prints a move journal as text, one line per record, followed by the number
+ * of records of each verdict.
+ *
+ * Usage: JournalDump file [-s]
+ *
+ * With -s only the summary is printed.
+ *
+ * @author faziz
+ */
+public class JournalDump {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: JournalDump file [-s]");
+            System.exit(1);
+        }
+        boolean summaryOnly = args.length > 1 && "-s".equals(args[1]);
+        MoveVerdict[] verdicts = MoveVerdict.values();
+        MovementDirection[] directions = MovementDirection.values();
+
+        MoveJournalReader reader = new MoveJournalReader(new File(args[0]));
+        try {
+            long placements = 0;
+            long[] verdictCounts = new long[verdicts.length];
+            long firstNanos = 0;
+            long lastNanos = 0;
+            while (reader.next()) {
+                if (reader.getPosition() == 0) {
+                    firstNanos = reader.getNanoTime();
+                }
+                lastNanos = reader.getNanoTime();
+                if (reader.getType() == MoveJournal.PLACED) {
+                    placements++;
+                } else {
+                    verdictCounts[reader.getVerdict()]++;
+                }
+                if (summaryOnly) {
+                    continue;
+                }
+                long micros = (reader.getNanoTime() - firstNanos) / 1000;
+                if (reader.getType() == MoveJournal.PLACED) {
+                    System.out.println(micros + " player " + reader.getPlayerId()
+                        + " placed at " + cell(reader, reader.getTo()));
+                } else {
+                    System.out.println(micros + " player " + reader.getPlayerId() + " "
+                        + directions[reader.getDirection()] + " from "
+                        + cell(reader, reader.getFrom()) + " to " + cell(reader, reader.getTo())
+                        + " " + verdicts[reader.getVerdict()]
+                        + (reader.isFouled() ? " foul" : ""));
+                }
+            }
+
+            long records = reader.getPosition() + 1;
+            System.out.println("Grid " + reader.getRows() + "x" + reader.getColumns() + ", "
+                + records + " records over " + (lastNanos - firstNanos) / 1000000 + " ms"
+                + (reader.getRecordedCount() == records ? "" : ", journal not closed"));
+            System.out.println("PLACED " + placements);
+            for (MoveVerdict verdict : verdicts) {
+                System.out.println(verdict + " " + verdictCounts[verdict.ordinal()]);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Cell index as row:column, or - off the grid. */
+    private static String cell(MoveJournalReader reader, long index) {
+        if (index < 0) {
+            return "-";
+        }
+        return (index / reader.getColumns()) + ":" + (index % reader.getColumns());
+    }
+}
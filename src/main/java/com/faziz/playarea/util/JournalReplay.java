@@ -0,0 +1,94 @@
+package com.faziz.playarea.util;
+
+import com.faziz.playarea.MatchListener;
+import com.faziz.playarea.MatchSnapshot;
+import com.faziz.playarea.PlayArea;
+import com.faziz.playarea.Player;
+import com.faziz.playarea.PlayerRuntime;
+import com.faziz.playarea.Referee;
+import com.faziz.playarea.ReplayEngine;
+import com.faziz.playarea.VirtualTimeScheduler;
+import com.faziz.playarea.grid.GridMode;
+import com.faziz.playarea.journal.MoveJournalReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replays a move journal at full speed and checks it plays out as recorded,
+ * optionally ending in the state of a snapshot taken at the end of the match.
+ * Exits with status 1 on any difference.
+ *
+ * Usage: JournalReplay journal [snapshot] [-g grid] [-n times]
+ *
+ * The grid mode is dense by default. With -n the journal is replayed that many
+ * times, each on a fresh play area, to let the JIT warm up before the moves per
+ * second of the last run are taken.
+ *
+ * @author faziz
+ */
+public class JournalReplay {
+
+    public static void main(String[] args) throws IOException {
+        String journal = null;
+        String snapshotFile = null;
+        GridMode gridMode = GridMode.DENSE;
+        int times = 1;
+        for (int i = 0; i < args.length; i++) {
+            if ("-g".equals(args[i]) && i + 1 < args.length) {
+                gridMode = GridMode.valueOf(args[++i].toUpperCase());
+            } else if ("-n".equals(args[i]) && i + 1 < args.length) {
+                times = Integer.parseInt(args[++i]);
+            } else if (journal == null) {
+                journal = args[i];
+            } else {
+                snapshotFile = args[i];
+            }
+        }
+        if (journal == null) {
+            System.err.println("Usage: JournalReplay journal [snapshot] [-g grid] [-n times]");
+            System.exit(1);
+        }
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        ReplayEngine engine = null;
+        for (int run = 0; run < times; run++) {
+            MoveJournalReader reader = new MoveJournalReader(new File(journal));
+            try {
+                PlayArea playArea = new PlayArea(reader.getRows(), reader.getColumns(), gridMode);
+                playArea.setScheduler(new VirtualTimeScheduler());
+                playArea.setPlayerRuntime(PlayerRuntime.EXTERNAL);
+                playArea.setSynchronousMoves(true);
+                playArea.setMatchListener(new MatchListener() {
+                    public void matchFinished(PlayArea playArea, Player winner) {
+                    }
+                });
+                Referee referee = new Referee(playArea);
+                playArea.setReferee(referee);
+                engine = new ReplayEngine(playArea, referee);
+                engine.replay(reader);
+            } finally {
+                reader.close();
+            }
+        }
+
+        System.out.println(engine.getRecordCount() + " records, " + engine.getMoveCount()
+            + " moves, " + (long) engine.getMovesPerSecond() + " moves/s.");
+        System.out.println(engine.getMismatchCount() + " records played differently.");
+        boolean same = engine.getMismatchCount() == 0;
+        if (snapshotFile != null) {
+            MatchSnapshot snapshot = new MatchSnapshot(new File(snapshotFile));
+            try {
+                int differences = engine.verify(snapshot);
+                System.out.println(differences + " players differ from the snapshot.");
+                same = same && differences == 0;
+            } finally {
+                snapshot.close();
+            }
+        }
+        if (!same) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.faziz.playarea.util;
+
+import com.faziz.playarea.MoveVerdict;
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.metrics.LatencyHistogram;
+import com.faziz.playarea.net.Protocol;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Load generator for a <code>PlayAreaServer</code>, on one thread and one
+ * selector however many connections it opens.
+ *
+ * Each connection registers its players, then keeps the given number of moves
+ * in flight for each of them: every verdict is answered with the next move of
+ * that slot, in a random direction. The frames for a connection are sent with
+ * one write per round of the selector. A slot stops once its player is out of
+ * the play. Prints the verdicts per second and their round trip latency every
+ * second.
+ *
+ * Usage: LoadClient [host port connections players inFlight seconds]
+ *
+ * @author faziz
+ */
+public class LoadClient {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7070;
+        int numberOfConnections = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int playersPerConnection = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int inFlight = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        long seconds = args.length > 5 ? Long.parseLong(args[5]) : 10;
+
+        LoadClient client = new LoadClient(playersPerConnection, inFlight);
+        client.connect(new InetSocketAddress(host, port), numberOfConnections);
+        client.run(seconds * 1000);
+    }
+
+    private final int playersPerConnection;
+    private final int inFlight;
+    private final Selector selector;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Random random = new Random();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private long verdicts = 0;
+    private long overloaded = 0;
+    private long registered = 0;
+    private long refused = 0;
+    private int activeSlots = 0;
+
+    public LoadClient(int playersPerConnection, int inFlight) throws IOException {
+        this.playersPerConnection = playersPerConnection;
+        this.inFlight = inFlight;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Opens the connections and sends the registrations.
+     * @param address
+     * @param numberOfConnections
+     * @throws IOException
+     */
+    public void connect(InetSocketAddress address, int numberOfConnections) throws IOException {
+        for (int c = 0; c < numberOfConnections; c++) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            for (int p = 0; p < playersPerConnection; p++) {
+                connection.append(Protocol.REGISTER, (byte) 0, 0, p);
+            }
+            flush(connection);
+        }
+    }
+
+    /**
+     * Handles the answers for the given time, printing the figures every second.
+     * @param millis
+     * @throws IOException
+     */
+    public void run(long millis) throws IOException {
+        long start = System.currentTimeMillis();
+        long end = start + millis;
+        long nextReport = start + 1000;
+        long reported = 0;
+        while (System.currentTimeMillis() < end && selector.keys().size() > 0) {
+            selector.select(Math.max(1, Math.min(nextReport, end) - System.currentTimeMillis()));
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                if (key.isValid() && key.isReadable()) {
+                    read(connection);
+                }
+                if (key.isValid()) {
+                    flush(connection);
+                }
+            }
+            long now = System.currentTimeMillis();
+            if (now >= nextReport) {
+                System.out.println(String.format("%ds: %d verdicts/s, %d slots moving,"
+                    + " %d overloaded | round trip us p50 %.1f p99 %.1f p99.9 %.1f max %.1f",
+                    (now - start) / 1000, verdicts - reported, activeSlots, overloaded,
+                    latency.getValueAtPercentile(50) / 1000.0,
+                    latency.getValueAtPercentile(99) / 1000.0,
+                    latency.getValueAtPercentile(99.9) / 1000.0, latency.getMax() / 1000.0));
+                reported = verdicts;
+                nextReport += 1000;
+            }
+        }
+        System.out.println(registered + " players registered, " + refused + " refused, "
+            + verdicts + " verdicts.");
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private void read(Connection connection) throws IOException {
+        readBuffer.clear();
+        readBuffer.put(connection.partial, 0, connection.partialLength);
+        if (connection.channel.read(readBuffer) < 0) {
+            connection.key.cancel();
+            connection.channel.close();
+            return;
+        }
+        readBuffer.flip();
+        long now = System.nanoTime();
+        while (readBuffer.remaining() >= Protocol.FRAME_SIZE) {
+            int frame = readBuffer.position();
+            byte type = readBuffer.get(frame + Protocol.TYPE_OFFSET);
+            byte code = readBuffer.get(frame + Protocol.CODE_OFFSET);
+            int player = readBuffer.getInt(frame + Protocol.PLAYER_OFFSET);
+            int sequence = readBuffer.getInt(frame + Protocol.SEQUENCE_OFFSET);
+            readBuffer.position(frame + Protocol.FRAME_SIZE);
+            if (type == Protocol.REGISTERED) {
+                registered(connection, player, sequence);
+            } else if (type == Protocol.VERDICT) {
+                verdict(connection, code, player, sequence, now);
+            }
+        }
+        connection.partialLength = readBuffer.remaining();
+        readBuffer.get(connection.partial, 0, connection.partialLength);
+    }
+
+    private void registered(Connection connection, int player, int index) {
+        if (player == 0) {
+            refused++;
+            return;
+        }
+        registered++;
+        connection.players[index] = player;
+        for (int slot = 0; slot < inFlight; slot++) {
+            activeSlots++;
+            move(connection, index * inFlight + slot);
+        }
+    }
+
+    private void verdict(Connection connection, byte code, int player, int sequence, long now) {
+        verdicts++;
+        latency.record(now - connection.sentAt[sequence]);
+        if (code == Protocol.OVERLOADED) {
+            overloaded++;
+        } else if (code == MoveVerdict.IGNORED.ordinal()) {
+            activeSlots--;
+            return;
+        }
+        move(connection, sequence);
+    }
+
+    /**
+     * Sends the next move of the slot, the sequence of a move is its slot.
+     */
+    private void move(Connection connection, int slot) {
+        connection.sentAt[slot] = System.nanoTime();
+        connection.append(Protocol.MOVE, (byte) random.nextInt(MovementDirection.values().length),
+            connection.players[slot / inFlight], slot);
+    }
+
+    private void flush(Connection connection) throws IOException {
+        ByteBuffer outbox = connection.outbox;
+        if (outbox.position() == 0) {
+            return;
+        }
+        outbox.flip();
+        connection.channel.write(outbox);
+        outbox.compact();
+        int ops = SelectionKey.OP_READ | (outbox.position() > 0 ? SelectionKey.OP_WRITE : 0);
+        if (connection.key.interestOps() != ops) {
+            connection.key.interestOps(ops);
+        }
+    }
+
+    private class Connection {
+
+        final SocketChannel channel;
+        SelectionKey key = null;
+        final int[] players = new int[playersPerConnection];
+        /** Time the move of each slot was sent. */
+        final long[] sentAt = new long[playersPerConnection * inFlight];
+        final byte[] partial = new byte[Protocol.FRAME_SIZE];
+        int partialLength = 0;
+        ByteBuffer outbox = ByteBuffer.allocate(Math.max(playersPerConnection * inFlight, 8)
+            * Protocol.FRAME_SIZE);
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void append(byte type, byte code, int player, int sequence) {
+            if (outbox.remaining() < Protocol.FRAME_SIZE) {
+                ByteBuffer grown = ByteBuffer.allocate(outbox.capacity() * 2);
+                outbox.flip();
+                grown.put(outbox);
+                outbox = grown;
+            }
+            Protocol.put(outbox, type, code, player, sequence, 0);
+        }
+    }
+}
@@ -1,24 +1,220 @@
 package com.faziz.playarea.util;
 
+import com.faziz.playarea.MatchSnapshot;
+import com.faziz.playarea.MovementDirection;
 import com.faziz.playarea.PlayArea;
 import com.faziz.playarea.Player;
+import com.faziz.playarea.PlayerRuntime;
 import com.faziz.playarea.Referee;
+import com.faziz.playarea.channel.BlockingQueueChannel;
+import com.faziz.playarea.channel.CoalescingChannel;
+import com.faziz.playarea.channel.OverloadPolicy;
+import com.faziz.playarea.channel.RingBufferChannel;
+import com.faziz.playarea.channel.ShedHandler;
+import com.faziz.playarea.channel.WaitStrategy;
+import com.faziz.playarea.grid.GridMode;
+import com.faziz.playarea.journal.MoveJournal;
+import com.faziz.playarea.metrics.MetricsReporter;
+import com.faziz.playarea.metrics.PlayAreaMetrics;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
 
 public class Main {
 
     private static final int NUMBER_OF_PLAYERS = 10;
+    private static final int CHANNEL_CAPACITY = 100;
+    private static final long JOURNAL_CAPACITY = 1 << 24;
+    private static final long SNAPSHOT_INTERVAL = 60;
 
     public static void main(String[] args) {
-        PlayArea playArea = PlayArea.getInstance();
+        Options options = new Options();
+        options.addOption("r", "rows", true, "rows of the play area, default "
+                + PlayArea.DEFAULT_MATRIX_SIZE);
+        options.addOption("c", "columns", true, "columns of the play area, default "
+                + PlayArea.DEFAULT_MATRIX_SIZE);
+        options.addOption("p", "players", true, "number of players, default "
+                + NUMBER_OF_PLAYERS);
+        options.addOption("g", "grid", true, 
+                "grid mode, dense, sparse or concurrent, default dense");
+        options.addOption("d", "direct", false, 
+                "players apply their own moves, needs the concurrent grid");
+        options.addOption("t", "runtime", true, 
+                "player runtime, timer or thread (virtual threads if available), default timer");
+        options.addOption("b", "batch", true, "requests handled per batch, default 1");
+        options.addOption("q", "channel", true, 
+                "request channel, queue, ring (lock free ring buffer) or mailbox (one move"
+                + " per player, never blocks), default queue");
+        options.addOption("s", "capacity", true, "request channel capacity, default "
+                + CHANNEL_CAPACITY);
+        options.addOption("w", "wait", true, 
+                "ring buffer wait strategy, busy_spin, yield or park, default park");
+        options.addOption("o", "overload", true, 
+                "mailbox overload policy, drop, coalesce or reject (the player is told and"
+                + " tries again), default reject");
+        options.addOption("x", "tiles", true, 
+                "split the play area into ROWSxCOLUMNS tiles, each with its own worker thread");
+        options.addOption("j", "journal", true, 
+                "record the placements and moves in a binary journal file");
+        options.addOption("k", "journal-capacity", true, 
+                "records the journal has room for, default " + JOURNAL_CAPACITY);
+        options.addOption("n", "snapshot", true, 
+                "write snapshots of the match to the file, every --snapshot-interval seconds,"
+                + " not with --direct");
+        options.addOption("i", "snapshot-interval", true, 
+                "seconds between snapshots, default " + SNAPSHOT_INTERVAL);
+        options.addOption("e", "restore", true, 
+                "restart the match from the snapshot file instead of placing new players");
+        options.addOption("m", "metrics", true, 
+                "print the metrics every given seconds, they are on JMX as well");
+        options.addOption("h", "help", false, "print this message");
+
+        CommandLine line;
+        try {
+            line = new PosixParser().parse(options, args);
+        } catch (ParseException ex) {
+            System.err.println(ex.getMessage());
+            new HelpFormatter().printHelp("playarea", options);
+            return;
+        }
+        if (line.hasOption("h")) {
+            new HelpFormatter().printHelp("playarea", options);
+            return;
+        }
+        if (line.hasOption("n") && line.hasOption("d")) {
+            // Direct moves can not be stopped for a snapshot to be taken.
+            System.err.println("--snapshot can not be used with --direct");
+            new HelpFormatter().printHelp("playarea", options);
+            return;
+        }
+
+        int rows = Integer.parseInt(line.getOptionValue("r",
+            String.valueOf(PlayArea.DEFAULT_MATRIX_SIZE)));
+        int columns = Integer.parseInt(line.getOptionValue("c",
+            String.valueOf(PlayArea.DEFAULT_MATRIX_SIZE)));
+        int numberOfPlayers = Integer.parseInt(line.getOptionValue("p",
+            String.valueOf(NUMBER_OF_PLAYERS)));
+        GridMode gridMode = GridMode.valueOf(line.getOptionValue("g", 
+            GridMode.DENSE.name()).toUpperCase());
+        PlayerRuntime playerRuntime = PlayerRuntime.valueOf(line.getOptionValue("t",
+            PlayerRuntime.TIMER.name()).toUpperCase());
+
+        MatchSnapshot snapshot = null;
+        if (line.hasOption("e")) {
+            try {
+                snapshot = new MatchSnapshot(new File(line.getOptionValue("e")));
+            } catch (IOException ex) {
+                System.err.println("Could not read the snapshot: " + ex.getMessage());
+                return;
+            }
+            rows = snapshot.getRows();
+            columns = snapshot.getColumns();
+        }
+
+        PlayArea playArea = PlayArea.getInstance(rows, columns, gridMode);
         Referee referee = Referee.getInstance(playArea);
         playArea.setReferee(referee);
+        playArea.setPlayerRuntime(playerRuntime);
+        playArea.setBatchSize(Integer.parseInt(line.getOptionValue("b", "1")));
+        int capacity = Integer.parseInt(line.getOptionValue("s", 
+            String.valueOf(CHANNEL_CAPACITY)));
+        String channel = line.getOptionValue("q", "queue");
+        if ("ring".equalsIgnoreCase(channel)) {
+            WaitStrategy waitStrategy = WaitStrategy.valueOf(line.getOptionValue("w", 
+                WaitStrategy.PARK.name()).toUpperCase());
+            playArea.setChannel(new RingBufferChannel(capacity, waitStrategy));
+        } else if ("mailbox".equalsIgnoreCase(channel)) {
+            OverloadPolicy policy = OverloadPolicy.valueOf(line.getOptionValue("o", 
+                OverloadPolicy.REJECT.name()).toUpperCase());
+            playArea.setChannel(new CoalescingChannel(capacity, policy, new ShedHandler() {
+                public void requestShed(Player player, MovementDirection direction) {
+                    player.rejectMoveRequest(direction);
+                }
+            }));
+        } else {
+            playArea.setChannel(new BlockingQueueChannel(capacity, true));
+        }
+        if (line.hasOption("d")) {
+            playArea.setDirectMoves(true);
+        }
+        if (line.hasOption("j")) {
+            long journalCapacity = Long.parseLong(line.getOptionValue("k", 
+                String.valueOf(JOURNAL_CAPACITY)));
+            try {
+                playArea.setJournal(new MoveJournal(new File(line.getOptionValue("j")), 
+                    rows, columns, journalCapacity));
+            } catch (IOException ex) {
+                System.err.println("Could not create the journal: " + ex.getMessage());
+                return;
+            }
+        }
+        if (line.hasOption("x")) {
+            String[] tiles = line.getOptionValue("x").toLowerCase().split("x");
+            playArea.setPartitions(Integer.parseInt(tiles[0]), Integer.parseInt(tiles[1]));
+        }
 
-        for (int i = 0; i < NUMBER_OF_PLAYERS; i++) {
-            Player player = new Player(playArea, referee, "Jhon" + i);
-            playArea.registerPlayer(player);
+        if (line.hasOption("m")) {
+            PlayAreaMetrics metrics = new PlayAreaMetrics(playArea);
+            playArea.setMetrics(metrics);
+            metrics.register("main");
+            long interval = Long.parseLong(line.getOptionValue("m"));
+            new MetricsReporter(metrics, System.out, interval * 1000).start();
+        }
+        if (snapshot != null) {
+            try {
+                snapshot.restore(playArea, referee);
+                snapshot.close();
+            } catch (IOException ex) {
+                System.err.println("Could not close the snapshot: " + ex.getMessage());
+            }
+        } else {
+            List<Player> players = new ArrayList<Player>(numberOfPlayers);
+            for (int i = 0; i < numberOfPlayers; i++) {
+                players.add(new Player(playArea, referee, "Jhon" + i));
+            }
+            playArea.registerPlayers(players);
         }
 
         playArea.activate();
         playArea.go();
+        if (line.hasOption("n")) {
+            long interval = Long.parseLong(line.getOptionValue("i", 
+                String.valueOf(SNAPSHOT_INTERVAL)));
+            startSnapshots(playArea, new File(line.getOptionValue("n")), interval * 1000);
+        }
+        try {
+            playArea.awaitFinish();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the match every interval, on a daemon thread.
+     */
+    private static void startSnapshots(final PlayArea playArea, final File file, 
+            final long intervalMillis) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                while (!playArea.isFinished()) {
+                    try {
+                        Thread.sleep(intervalMillis);
+                        MatchSnapshot.take(playArea, file);
+                    } catch (InterruptedException ex) {
+                        return;
+                    } catch (IOException ex) {
+                        System.err.println("Could not write the snapshot: " + ex.getMessage());
+                    }
+                }
+            }
+        }, "snapshots");
+        thread.setDaemon(true);
+        thread.start();
     }
 }
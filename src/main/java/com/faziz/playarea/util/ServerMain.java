@@ -0,0 +1,68 @@
+package com.faziz.playarea.util;
+
+import com.faziz.playarea.MatchListener;
+import com.faziz.playarea.PlayArea;
+import com.faziz.playarea.Player;
+import com.faziz.playarea.PlayerRuntime;
+import com.faziz.playarea.Referee;
+import com.faziz.playarea.channel.CoalescingChannel;
+import com.faziz.playarea.channel.OverloadPolicy;
+import com.faziz.playarea.grid.GridMode;
+import com.faziz.playarea.metrics.PlayAreaMetrics;
+import com.faziz.playarea.net.PlayAreaServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a match for remote players on a <code>PlayAreaServer</code> and prints
+ * the connections, frames and metrics every second until the match is over.
+ *
+ * Usage: ServerMain [port size minPlayers]
+ *
+ * @author faziz
+ */
+public class ServerMain {
+
+    /** Largest request channel, its queue is allocated up front. */
+    private static final int MAX_CHANNEL_CAPACITY = 1 << 20;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int minPlayers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        PlayArea playArea = new PlayArea(size, size, GridMode.DENSE);
+        Referee referee = new Referee(playArea);
+        playArea.setReferee(referee);
+        playArea.setPlayerRuntime(PlayerRuntime.EXTERNAL);
+        // A move per player at most, as a player has one asynchronous move sent at
+        // a time. Beyond MAX_CHANNEL_CAPACITY players moving at once the moves
+        // are answered as overloaded.
+        playArea.setChannel(new CoalescingChannel((int) Math.min((long) size * size,
+            MAX_CHANNEL_CAPACITY), OverloadPolicy.DROP, null));
+        playArea.setBatchSize(256);
+        PlayAreaMetrics metrics = new PlayAreaMetrics(playArea);
+        playArea.setMetrics(metrics);
+        metrics.register("server");
+        playArea.setMatchListener(new MatchListener() {
+            public void matchFinished(PlayArea playArea, Player winner) {
+                System.out.println("Match over, " + winner + " won.");
+            }
+        });
+
+        PlayAreaServer server = new PlayAreaServer(playArea, referee,
+            new InetSocketAddress(port), minPlayers);
+        server.start();
+        System.out.println("Listening on port " + server.getPort() + ".");
+        while (!playArea.isFinished()) {
+            Thread.sleep(1000);
+            metrics.sample();
+            System.out.println(server.getConnectionCount() + " connections, frames in "
+                + server.getFramesIn() + " out " + server.getFramesOut() + " | " + metrics);
+        }
+        server.close();
+    }
+}
@@ -0,0 +1,75 @@
+package com.faziz.playarea;
+
+import com.faziz.playarea.grid.GridMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the asynchronous moves a player makes without waiting for the
+ * verdicts are judged one by one in the order they were made.
+ *
+ * @author faziz
+ */
+public class AsyncMoveTest {
+
+    private final ExecutorService coordinatorPool = Executors.newFixedThreadPool(1);
+
+    @After
+    public void shutdown() {
+        coordinatorPool.shutdownNow();
+    }
+
+    @Test(timeout = 20000)
+    public void judgesMovesOfPlayerInOrder() {
+        final int moves = 8000;
+        PlayArea playArea = new PlayArea(50, 50, GridMode.DENSE);
+        Referee referee = new Referee(playArea);
+        playArea.setReferee(referee);
+        playArea.setPlayerRuntime(PlayerRuntime.EXTERNAL);
+        playArea.setCoordinatorPool(coordinatorPool);
+        playArea.setMatchListener(new MatchListener() {
+            public void matchFinished(PlayArea playArea, Player winner) {
+            }
+        });
+        Player mover = new Player(playArea, referee, "Jhon0");
+        Player other = new Player(playArea, referee, "Jhon1");
+        playArea.restorePlayer(mover, 25 * 50 + 25, 0, 0, PlayerRegistry.ACTIVE);
+        playArea.restorePlayer(other, 0, 0, 0, PlayerRegistry.ACTIVE);
+        playArea.activate();
+
+        final List<Integer> order = new ArrayList<Integer>(moves);
+        List<CompletableFuture<MoveVerdict>> futures =
+            new ArrayList<CompletableFuture<MoveVerdict>>(moves);
+        for (int i = 0; i < moves; i++) {
+            final int move = i;
+            // Back and forth, every move is accepted in this order only.
+            MovementDirection direction = (i % 2 == 0) ? MovementDirection.LEFT
+                : MovementDirection.RIGHT;
+            CompletableFuture<MoveVerdict> future = playArea.requestMoveAsync(mover, direction);
+            future.whenComplete(new BiConsumer<MoveVerdict, Throwable>() {
+                public void accept(MoveVerdict verdict, Throwable failure) {
+                    synchronized (order) {
+                        order.add(move);
+                    }
+                }
+            });
+            futures.add(future);
+        }
+        for (CompletableFuture<MoveVerdict> future : futures) {
+            assertEquals(MoveVerdict.ACCEPTED, future.join());
+        }
+        synchronized (order) {
+            for (int i = 0; i < moves; i++) {
+                assertEquals(i, order.get(i).intValue());
+            }
+        }
+        assertEquals(25 * 50 + 25, mover.getCellIndex());
+    }
+}
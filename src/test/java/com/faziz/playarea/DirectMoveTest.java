@@ -0,0 +1,122 @@
+package com.faziz.playarea;
+
+import com.faziz.playarea.grid.Grid;
+import com.faziz.playarea.grid.GridMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Drives the direct moves from many threads at once on a concurrent grid and
+ * checks no two players ever share a cell.
+ *
+ * Each thread moves its own players only, and a player is only moved or
+ * evicted by its own moves, so after every move the thread can check its
+ * player is still in the cell it claimed. Any other player moving into that
+ * cell shows up there right away.
+ *
+ * @author faziz
+ */
+public class DirectMoveTest {
+
+    private static final int ROWS = 1024;
+    private static final int COLUMNS = 1024;
+    private static final int PLAYERS = 20000;
+    private static final int THREADS = 8;
+    /** Moves asked of each player, few enough for most of them to stay. */
+    private static final int ROUNDS = 50;
+
+    @Test
+    public void playersNeverShareACell() throws InterruptedException {
+        final PlayArea playArea = new PlayArea(ROWS, COLUMNS, GridMode.CONCURRENT);
+        Referee referee = new Referee(playArea);
+        playArea.setReferee(referee);
+        playArea.setPlayerRuntime(PlayerRuntime.EXTERNAL);
+        playArea.setDirectMoves(true);
+        playArea.setMatchListener(new MatchListener() {
+            public void matchFinished(PlayArea playArea, Player winner) {
+            }
+        });
+
+        final List<Player> players = new ArrayList<Player>(PLAYERS);
+        for (int i = 0; i < PLAYERS; i++) {
+            Player player = new Player(playArea, referee, "Jhon" + i);
+            playArea.registerPlayer(player);
+            players.add(player);
+        }
+        playArea.activate();
+        playArea.go();
+
+        final Grid grid = playArea.getGrid();
+        final AtomicLong checks = new AtomicLong();
+        final AtomicReference<String> violation = new AtomicReference<String>();
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            final int first = t;
+            new Thread(new Runnable() {
+                public void run() {
+                    Random random = new Random(first);
+                    MovementDirection[] directions = MovementDirection.values();
+                    long count = 0;
+                    try {
+                        for (int round = 0; round < ROUNDS && violation.get() == null;
+                                round++) {
+                            for (int i = first; i < players.size(); i += THREADS) {
+                                Player player = players.get(i);
+                                if (!playArea.isRegistered(player)) {
+                                    continue;
+                                }
+                                playArea.requestMove(player,
+                                    directions[random.nextInt(directions.length)]);
+                                long cell = player.getCellIndex();
+                                if (playArea.isRegistered(player)
+                                        && grid.get(cell) != player.getId()) {
+                                    violation.compareAndSet(null, player + " lost its cell "
+                                        + cell + " to player " + grid.get(cell));
+                                }
+                                count++;
+                            }
+                        }
+                    } finally {
+                        checks.addAndGet(count);
+                        done.countDown();
+                    }
+                }
+            }, "direct-" + t).start();
+        }
+        done.await();
+        playArea.getScheduler().shutdown();
+
+        assertNull(violation.get(), violation.get());
+        assertTrue("No move was made", checks.get() > 0);
+        assertFalse("The match should still be on", playArea.isFinished());
+
+        int registered = 0;
+        for (Player player : players) {
+            if (playArea.isRegistered(player)) {
+                registered++;
+                assertEquals(player + " is not in its cell", player.getId(),
+                    grid.get(player.getCellIndex()));
+            }
+        }
+        assertTrue("Too few players left: " + registered, registered > PLAYERS / 4);
+
+        long occupied = 0;
+        for (long index = 0; index < grid.size(); index++) {
+            int id = grid.get(index);
+            if (id == Grid.EMPTY) {
+                continue;
+            }
+            occupied++;
+            Player player = playArea.getPlayer(id);
+            assertTrue("Cell " + index + " holds " + player + " which is elsewhere",
+                playArea.isRegistered(player) && player.getCellIndex() == index);
+        }
+        assertEquals(registered, occupied);
+    }
+}
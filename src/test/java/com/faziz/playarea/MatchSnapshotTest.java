@@ -0,0 +1,73 @@
+package com.faziz.playarea;
+
+import com.faziz.playarea.grid.Grid;
+import com.faziz.playarea.grid.GridMode;
+import com.faziz.playarea.sim.Simulation;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Takes a snapshot of a match with a million players, some of them evicted,
+ * restores it into a new play area and checks the registry and the grid come
+ * back as they were.
+ *
+ * @author faziz
+ */
+public class MatchSnapshotTest {
+
+    private static final int SIZE = 2000;
+    private static final int PLAYERS = 1000000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoresMillionPlayers() throws IOException {
+        Simulation simulation = new Simulation(SIZE, SIZE, GridMode.DENSE, PLAYERS, 7);
+        // Long enough for the first moves, fouls and evictions.
+        simulation.run(3000);
+        PlayArea playArea = simulation.getPlayArea();
+        PlayerRegistry registry = playArea.getRegistry();
+        assertTrue("Nobody was evicted", registry.getActiveCount() < PLAYERS);
+
+        File file = folder.newFile("match.snapshot");
+        assertEquals(PLAYERS, MatchSnapshot.take(playArea, file));
+
+        PlayArea restored = new PlayArea(SIZE, SIZE, GridMode.DENSE);
+        restored.setPlayerRuntime(PlayerRuntime.EXTERNAL);
+        MatchSnapshot snapshot = new MatchSnapshot(file);
+        try {
+            assertEquals(SIZE, snapshot.getRows());
+            assertEquals(SIZE, snapshot.getColumns());
+            assertEquals(registry.getActiveCount(), snapshot.getActiveCount());
+            assertEquals(registry.getActiveCount(),
+                snapshot.restore(restored, new Referee(restored)));
+        } finally {
+            snapshot.close();
+            restored.getScheduler().shutdown();
+        }
+
+        PlayerRegistry copy = restored.getRegistry();
+        assertEquals(registry.getIdBound(), copy.getIdBound());
+        assertEquals(registry.getActiveCount(), copy.getActiveCount());
+        for (int id = 1; id < registry.getIdBound(); id++) {
+            assertEquals("Status of " + id, registry.getStatus(id), copy.getStatus(id));
+            assertEquals("Flags of " + id, registry.getFlagCount(id), copy.getFlagCount(id));
+            assertEquals("Evictions of " + id, registry.getEvictionCount(id),
+                copy.getEvictionCount(id));
+            assertEquals(registry.getPlayer(id).getName(), copy.getPlayer(id).getName());
+            if (registry.isActive(id)) {
+                assertEquals("Cell of " + id, registry.getCell(id), copy.getCell(id));
+            }
+        }
+        Grid grid = playArea.getGrid();
+        Grid restoredGrid = restored.getGrid();
+        for (long index = 0; index < grid.size(); index++) {
+            assertEquals("Cell " + index, grid.get(index), restoredGrid.get(index));
+        }
+    }
+}
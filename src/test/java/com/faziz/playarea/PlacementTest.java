@@ -0,0 +1,37 @@
+package com.faziz.playarea;
+
+import com.faziz.playarea.grid.Grid;
+import com.faziz.playarea.grid.GridMode;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the players are placed on the last empty cells of a crowded board,
+ * and refused once it is full, on every kind of grid.
+ *
+ * @author faziz
+ */
+public class PlacementTest {
+
+    @Test(timeout = 10000)
+    public void fillsBoardThenRefusesPlayer() {
+        for (GridMode gridMode : GridMode.values()) {
+            PlayArea playArea = new PlayArea(3, 3, gridMode);
+            Referee referee = new Referee(playArea);
+            playArea.setReferee(referee);
+            for (int i = 0; i < 9; i++) {
+                playArea.registerPlayer(new Player(playArea, referee, "Jhon" + i));
+            }
+            Grid grid = playArea.getGrid();
+            for (long index = 0; index < grid.size(); index++) {
+                assertTrue(gridMode + " cell " + index, grid.isOccupied(index));
+            }
+            assertEquals(Grid.NO_CELL, grid.randomFreeCell(playArea.getRandom()));
+            try {
+                playArea.registerPlayer(new Player(playArea, referee, "Jhon9"));
+                fail(gridMode + " board is full");
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+}
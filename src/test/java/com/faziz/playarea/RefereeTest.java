@@ -0,0 +1,36 @@
+package com.faziz.playarea;
+
+import com.faziz.playarea.grid.GridMode;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the referee judges the moves off the board of a player in a corner,
+ * on every kind of grid, as not allowed and not fouled.
+ *
+ * @author faziz
+ */
+public class RefereeTest {
+
+    @Test
+    public void movesOffTheBoardAreNotFouled() {
+        for (GridMode gridMode : GridMode.values()) {
+            PlayArea playArea = new PlayArea(4, 4, gridMode);
+            Referee referee = new Referee(playArea);
+            playArea.setReferee(referee);
+            Player corner = new Player(playArea, referee, "Jhon0");
+            Player next = new Player(playArea, referee, "Jhon1");
+            playArea.restorePlayer(corner, 0, 0, 0, PlayerRegistry.ACTIVE);
+            playArea.restorePlayer(next, 5, 0, 0, PlayerRegistry.ACTIVE);
+
+            for (MovementDirection direction : new MovementDirection[]{
+                    MovementDirection.LEFT, MovementDirection.TOP}) {
+                assertFalse(gridMode + " " + direction, referee.moveIsAllowed(corner, direction));
+                assertFalse(gridMode + " " + direction, referee.moveIsFouled(corner, direction));
+            }
+            // Next to the other player, on the board.
+            assertTrue(gridMode.toString(),
+                referee.moveIsFouled(corner, MovementDirection.BOTTOM));
+        }
+    }
+}
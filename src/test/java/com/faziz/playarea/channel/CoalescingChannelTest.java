@@ -0,0 +1,189 @@
+package com.faziz.playarea.channel;
+
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.PlayArea;
+import com.faziz.playarea.Player;
+import com.faziz.playarea.channel.RingBufferChannelTest.Recorder;
+import com.faziz.playarea.grid.GridMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the mailbox keeps one move per player under each overload policy,
+ * sheds the requests of other players once full, and accounts for every
+ * request under concurrent producers.
+ *
+ * @author faziz
+ */
+public class CoalescingChannelTest {
+
+    /** Room for more players than the 4096 slots of a page. */
+    private final PlayArea playArea = new PlayArea(100, 100, GridMode.DENSE);
+
+    @Test
+    public void coalescesToLatestMove() {
+        CoalescingChannel channel = new CoalescingChannel(8, OverloadPolicy.COALESCE, null);
+        List<Player> players = players(2);
+        assertTrue(channel.offer(players.get(0), MovementDirection.TOP));
+        assertTrue(channel.offer(players.get(1), MovementDirection.LEFT));
+        assertTrue(channel.offer(players.get(0), MovementDirection.BOTTOM));
+        assertEquals(2, channel.size());
+
+        Recorder recorder = new Recorder();
+        assertEquals(2, channel.poll(recorder, 10));
+        assertEquals(players, recorder.players);
+        assertEquals(Arrays.asList(MovementDirection.BOTTOM, MovementDirection.LEFT),
+            recorder.directions);
+        assertEquals(1, channel.getCoalescedCount());
+        assertEquals(0, channel.getShedCount());
+    }
+
+    @Test
+    public void dropKeepsWaitingMove() {
+        CoalescingChannel channel = new CoalescingChannel(8, OverloadPolicy.DROP, null);
+        Player player = players(1).get(0);
+        assertTrue(channel.offer(player, MovementDirection.TOP));
+        assertFalse(channel.offer(player, MovementDirection.BOTTOM));
+        assertEquals(1, channel.size());
+
+        Recorder recorder = new Recorder();
+        assertEquals(1, channel.poll(recorder, 10));
+        assertEquals(Arrays.asList(MovementDirection.TOP), recorder.directions);
+        assertEquals(1, channel.getDroppedCount());
+        assertEquals(0, channel.getRejectedCount());
+
+        // The slot is free again once the move is handed over.
+        assertTrue(channel.offer(player, MovementDirection.RIGHT));
+    }
+
+    @Test
+    public void rejectTellsShedHandler() {
+        final Recorder shed = new Recorder();
+        CoalescingChannel channel = new CoalescingChannel(8, OverloadPolicy.REJECT,
+            new ShedHandler() {
+                public void requestShed(Player player, MovementDirection direction) {
+                    shed.onRequest(player, direction);
+                }
+            });
+        Player player = players(1).get(0);
+        assertTrue(channel.offer(player, MovementDirection.TOP));
+        assertFalse(channel.offer(player, MovementDirection.LEFT));
+        assertEquals(Arrays.asList(player), shed.players);
+        assertEquals(Arrays.asList(MovementDirection.LEFT), shed.directions);
+        assertEquals(1, channel.getRejectedCount());
+        assertEquals(0, channel.getDroppedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNeedsShedHandler() {
+        new CoalescingChannel(8, OverloadPolicy.REJECT, null);
+    }
+
+    @Test(timeout = 10000)
+    public void shedsOtherPlayersOnceFull() throws InterruptedException {
+        CoalescingChannel channel = new CoalescingChannel(2, OverloadPolicy.COALESCE, null);
+        List<Player> players = players(3);
+        assertTrue(channel.offer(players.get(0), MovementDirection.TOP));
+        assertTrue(channel.offer(players.get(1), MovementDirection.TOP));
+        assertFalse(channel.offer(players.get(2), MovementDirection.TOP));
+        // Never waits for room either.
+        channel.put(players.get(2), MovementDirection.TOP);
+        // A player with a move waiting still takes no more room.
+        assertTrue(channel.offer(players.get(0), MovementDirection.LEFT));
+        assertEquals(2, channel.size());
+        assertEquals(2, channel.getDroppedCount());
+        assertEquals(1, channel.getCoalescedCount());
+
+        Recorder recorder = new Recorder();
+        assertEquals(1, channel.poll(recorder, 1));
+        assertTrue(channel.offer(players.get(2), MovementDirection.RIGHT));
+        assertEquals(2, channel.poll(recorder, 10));
+        assertEquals(players, recorder.players);
+    }
+
+    @Test
+    public void growsPagesForHighIds() {
+        CoalescingChannel channel = new CoalescingChannel(8, OverloadPolicy.COALESCE, null);
+        List<Player> players = players(5000);
+        Player last = players.get(players.size() - 1);
+        Player first = players.get(0);
+        assertTrue(channel.offer(last, MovementDirection.TOP));
+        assertTrue(channel.offer(first, MovementDirection.LEFT));
+        assertTrue(channel.offer(last, MovementDirection.BOTTOM));
+
+        Recorder recorder = new Recorder();
+        assertEquals(2, channel.poll(recorder, 10));
+        assertEquals(Arrays.asList(last, first), recorder.players);
+        assertEquals(Arrays.asList(MovementDirection.BOTTOM, MovementDirection.LEFT),
+            recorder.directions);
+    }
+
+    @Test(timeout = 60000)
+    public void accountsForEveryRequest() throws InterruptedException {
+        final int producers = 4;
+        final int requests = 50000;
+        final CoalescingChannel channel = new CoalescingChannel(64, OverloadPolicy.COALESCE,
+            null);
+        final List<Player> players = players(400);
+        final AtomicLong taken = new AtomicLong();
+        final AtomicLong refused = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final int first = p;
+            Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(first);
+                    MovementDirection[] directions = MovementDirection.values();
+                    long ok = 0;
+                    for (int i = 0; i < requests; i++) {
+                        // Producers share the players, as moves of a player may.
+                        Player player = players.get(random.nextInt(players.size()));
+                        if (channel.offer(player, directions[random.nextInt(4)])) {
+                            ok++;
+                        }
+                    }
+                    taken.addAndGet(ok);
+                    refused.addAndGet(requests - ok);
+                }
+            };
+            threads.add(producer);
+            producer.start();
+        }
+
+        final long[] handed = new long[1];
+        RequestHandler counter = new RequestHandler() {
+            public void onRequest(Player player, MovementDirection direction) {
+                assertNotNull(direction);
+                handed[0]++;
+            }
+        };
+        for (Thread producer : threads) {
+            while (producer.isAlive()) {
+                channel.poll(counter, 32);
+            }
+            producer.join();
+        }
+        channel.poll(counter, Integer.MAX_VALUE);
+
+        assertEquals(0, channel.size());
+        assertEquals((long) producers * requests, taken.get() + refused.get());
+        assertEquals(refused.get(), channel.getShedCount());
+        assertEquals(taken.get(), handed[0] + channel.getCoalescedCount());
+    }
+
+    private List<Player> players(int count) {
+        List<Player> players = new ArrayList<Player>(count);
+        for (int i = 0; i < count; i++) {
+            players.add(new Player(playArea, null, "Jhon" + i));
+        }
+        playArea.registerPlayers(players);
+        return players;
+    }
+}
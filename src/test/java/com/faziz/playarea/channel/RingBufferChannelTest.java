@@ -0,0 +1,178 @@
+package com.faziz.playarea.channel;
+
+import com.faziz.playarea.MovementDirection;
+import com.faziz.playarea.PlayArea;
+import com.faziz.playarea.Player;
+import com.faziz.playarea.grid.GridMode;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the ring buffer hands the requests over in order, never more than it
+ * has room for, and without losing any to concurrent producers.
+ *
+ * @author faziz
+ */
+public class RingBufferChannelTest {
+
+    private final PlayArea playArea = new PlayArea(10, 10, GridMode.DENSE);
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(8, new RingBufferChannel(5, WaitStrategy.PARK).capacity());
+        assertEquals(8, new RingBufferChannel(8, WaitStrategy.PARK).capacity());
+        assertEquals(2, new RingBufferChannel(1, WaitStrategy.PARK).capacity());
+    }
+
+    @Test
+    public void handsOverInOrderUpToMax() throws InterruptedException {
+        RingBufferChannel channel = new RingBufferChannel(8, WaitStrategy.PARK);
+        List<Player> players = players(5);
+        for (int i = 0; i < players.size(); i++) {
+            channel.put(players.get(i), MovementDirection.values()[i % 4]);
+        }
+        assertEquals(5, channel.size());
+
+        Recorder recorder = new Recorder();
+        assertEquals(3, channel.poll(recorder, 3));
+        assertEquals(2, channel.drain(recorder, 10));
+        assertEquals(0, channel.poll(recorder, 10));
+        assertEquals(0, channel.size());
+        assertEquals(players, recorder.players);
+        for (int i = 0; i < players.size(); i++) {
+            assertEquals(MovementDirection.values()[i % 4], recorder.directions.get(i));
+        }
+    }
+
+    @Test
+    public void offerFailsOnlyWhileFull() {
+        RingBufferChannel channel = new RingBufferChannel(4, WaitStrategy.PARK);
+        List<Player> players = players(6);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(channel.offer(players.get(i), MovementDirection.TOP));
+        }
+        assertFalse(channel.offer(players.get(4), MovementDirection.TOP));
+        assertEquals(4, channel.size());
+
+        Recorder recorder = new Recorder();
+        assertEquals(1, channel.poll(recorder, 1));
+        assertTrue(channel.offer(players.get(4), MovementDirection.TOP));
+        assertFalse(channel.offer(players.get(5), MovementDirection.TOP));
+        assertEquals(4, channel.poll(recorder, 10));
+        assertEquals(players.subList(0, 5), recorder.players);
+    }
+
+    @Test(timeout = 10000)
+    public void drainWaitsForProducer() throws InterruptedException {
+        final RingBufferChannel channel = new RingBufferChannel(4, WaitStrategy.PARK);
+        final Player player = players(1).get(0);
+        final Recorder recorder = new Recorder();
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    channel.drain(recorder, 4);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        consumer.start();
+        Thread.sleep(100);
+        assertTrue(recorder.players.isEmpty());
+        channel.put(player, MovementDirection.LEFT);
+        consumer.join();
+        assertEquals(1, recorder.players.size());
+        assertSame(player, recorder.players.get(0));
+    }
+
+    @Test(timeout = 60000)
+    public void keepsOrderOfEachProducer() throws InterruptedException {
+        final int producers = 4;
+        final int requests = 20000;
+        final RingBufferChannel channel = new RingBufferChannel(64, WaitStrategy.YIELD);
+        final Map<Player, int[]> origin = new IdentityHashMap<Player, int[]>();
+        final List<List<Player>> sent = new ArrayList<List<Player>>();
+        for (int p = 0; p < producers; p++) {
+            List<Player> players = players(requests);
+            for (int i = 0; i < requests; i++) {
+                origin.put(players.get(i), new int[]{p, i});
+            }
+            sent.add(players);
+        }
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final List<Player> players = sent.get(p);
+            Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (Player player : players) {
+                            if ((origin.get(player)[1] & 1) == 0) {
+                                channel.put(player, MovementDirection.BOTTOM);
+                            } else {
+                                while (!channel.offer(player, MovementDirection.BOTTOM)) {
+                                    Thread.yield();
+                                }
+                            }
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            threads.add(producer);
+            producer.start();
+        }
+
+        final int[] next = new int[producers];
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        RequestHandler checker = new RequestHandler() {
+            public void onRequest(Player player, MovementDirection direction) {
+                int[] from = origin.get(player);
+                if (from[1] != next[from[0]]) {
+                    outOfOrder.incrementAndGet();
+                }
+                next[from[0]] = from[1] + 1;
+            }
+        };
+        int received = 0;
+        while (received < producers * requests) {
+            received += channel.drain(checker, 32);
+        }
+        for (Thread producer : threads) {
+            producer.join();
+        }
+        assertEquals(0, outOfOrder.get());
+        assertEquals(0, channel.size());
+        for (int p = 0; p < producers; p++) {
+            assertEquals(requests, next[p]);
+        }
+    }
+
+    private List<Player> players(int count) {
+        List<Player> players = new ArrayList<Player>(count);
+        for (int i = 0; i < count; i++) {
+            players.add(new Player(playArea, null, "Jhon" + i));
+        }
+        return players;
+    }
+
+    /** Keeps what it is handed. */
+    static class Recorder implements RequestHandler {
+
+        final List<Player> players = new ArrayList<Player>();
+        final List<MovementDirection> directions = new ArrayList<MovementDirection>();
+
+        public void onRequest(Player player, MovementDirection direction) {
+            players.add(player);
+            directions.add(direction);
+        }
+    }
+}
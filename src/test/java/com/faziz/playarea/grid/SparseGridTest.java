@@ -0,0 +1,133 @@
+package com.faziz.playarea.grid;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the backward shift deletion of <code>SparseGrid</code> keeps every
+ * remaining cell reachable, on probe chains of cells sharing a home slot and
+ * on chains wrapping around the end of the table.
+ *
+ * @author faziz
+ */
+public class SparseGridTest {
+
+    /** Table size of a grid created for no players. */
+    private static final int CAPACITY = 16;
+    private static final int ROWS = 1000;
+    private static final int COLUMNS = 1000;
+
+    @Test
+    public void removesFromChainOfCollidingCells() {
+        List<Long> cells = cellsWithHome(3, 6);
+        // Every position in the chain, first, middle and last.
+        for (int removed = 0; removed < cells.size(); removed++) {
+            SparseGrid grid = new SparseGrid(ROWS, COLUMNS, 0);
+            Map<Long, Integer> expected = fill(grid, cells);
+            grid.clear(cells.get(removed));
+            expected.remove(cells.get(removed));
+            assertContents(grid, cells, expected);
+        }
+    }
+
+    @Test
+    public void removesOneAfterTheOther() {
+        List<Long> cells = cellsWithHome(7, 3);
+        cells.addAll(cellsWithHome(8, 3));
+        SparseGrid grid = new SparseGrid(ROWS, COLUMNS, 0);
+        Map<Long, Integer> expected = fill(grid, cells);
+        assertEquals("Table must not have grown", CAPACITY, grid.capacity());
+        for (long cell : cells) {
+            grid.clear(cell);
+            expected.remove(cell);
+            assertContents(grid, cells, expected);
+        }
+        assertEquals(0, grid.getOccupiedCount());
+    }
+
+    @Test
+    public void removesFromChainWrappingAround() {
+        // Homes at the last slots, so the chain runs past the end onto slot 0 and on.
+        List<Long> cells = cellsWithHome(CAPACITY - 2, 2);
+        cells.addAll(cellsWithHome(CAPACITY - 1, 2));
+        cells.addAll(cellsWithHome(0, 2));
+        for (int removed = 0; removed < cells.size(); removed++) {
+            SparseGrid grid = new SparseGrid(ROWS, COLUMNS, 0);
+            Map<Long, Integer> expected = fill(grid, cells);
+            assertEquals("Table must not have grown", CAPACITY, grid.capacity());
+            grid.clear(cells.get(removed));
+            expected.remove(cells.get(removed));
+            assertContents(grid, cells, expected);
+
+            // And the rest in turn, shifting entries back over the wrap.
+            for (long cell : cells) {
+                grid.clear(cell);
+                expected.remove(cell);
+                assertContents(grid, cells, expected);
+            }
+        }
+    }
+
+    @Test
+    public void matchesMapUnderRandomChanges() {
+        Random random = new Random(42);
+        SparseGrid grid = new SparseGrid(64, 64, 0);
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        List<Long> cells = new ArrayList<Long>();
+        for (long cell = 0; cell < 64 * 64; cell++) {
+            cells.add(cell);
+        }
+        for (int i = 0; i < 200000; i++) {
+            long cell = random.nextInt(512);
+            if (random.nextInt(3) == 0) {
+                grid.clear(cell);
+                expected.remove(cell);
+            } else {
+                int id = random.nextInt(1000) + 1;
+                grid.set(cell, id);
+                expected.put(cell, id);
+            }
+            assertEquals(expected.size(), grid.getOccupiedCount());
+        }
+        assertContents(grid, cells, expected);
+    }
+
+    /**
+     * @return the first cells whose home slot in a table of
+     * <code>CAPACITY</code> slots is the given one.
+     */
+    private static List<Long> cellsWithHome(int home, int count) {
+        List<Long> cells = new ArrayList<Long>();
+        for (long cell = 0; cells.size() < count; cell++) {
+            if ((SparseGrid.hash(cell) & (CAPACITY - 1)) == home) {
+                cells.add(cell);
+            }
+        }
+        return cells;
+    }
+
+    private static Map<Long, Integer> fill(SparseGrid grid, List<Long> cells) {
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        for (int i = 0; i < cells.size(); i++) {
+            grid.set(cells.get(i), i + 1);
+            expected.put(cells.get(i), i + 1);
+        }
+        return expected;
+    }
+
+    private static void assertContents(SparseGrid grid, List<Long> cells,
+            Map<Long, Integer> expected) {
+        for (long cell : cells) {
+            Integer id = expected.get(cell);
+            assertEquals("Player in cell " + cell, (id == null) ? Grid.EMPTY : id.intValue(),
+                grid.get(cell));
+            assertEquals("Occupancy of cell " + cell, id != null, grid.isOccupied(cell));
+        }
+        assertEquals(expected.size(), grid.getOccupiedCount());
+    }
+}